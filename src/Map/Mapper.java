@@ -9,10 +9,13 @@ import java.io.File;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import articulation_points.ArtPointSearch;
+import a_star.RouteCache;
+import a_star.ServiceArea;
+import a_star.Weighting;
 import util.GUI;
 import util.Location;
 import util.Trie;
@@ -36,6 +39,12 @@ public class Mapper extends GUI {
 	public static final Color ART_POINTS_COLOUR = Color.MAGENTA;
 	public static final Color ART_POINTS_COMPONENT_COLOUR = Color.PINK;
 	public static final Color ASTAR_ROUTE = Color.GREEN;
+	public static final Color SERVICE_AREA_COLOUR = new Color(0, 170, 170);
+
+	// how far the service area reaches: 2km, or 5 minutes when routing by
+	// time.
+	public static final double SERVICE_AREA_DISTANCE = 2;
+	public static final double SERVICE_AREA_TIME = 5.0 / 60;
 
 	// these two constants define the size of the node squares at different zoom
 	// levels; the equation used is node size = NODE_INTERCEPT + NODE_GRADIENT *
@@ -46,21 +55,39 @@ public class Mapper extends GUI {
 	// defines how much you move per button press, and is dependent on scale.
 	public static final double MOVE_AMOUNT = 100;
 	// defines how much you zoom in/out per button press, and the maximum and
-	// minimum zoom levels.
+	// minimum zoom levels. The map opens at a scale of 1; zoomed out past that,
+	// minor roads are left out (see SegmentDetail).
 	public static final double ZOOM_FACTOR = 1.3;
-	public static final double MIN_ZOOM = 1, MAX_ZOOM = 200;
+	public static final double MIN_ZOOM = 0.25, MAX_ZOOM = 200;
+
+	// how many routes to remember.
+	public static final int ROUTE_CACHE_SIZE = 1000;
+	// how much memory drawn map tiles may take up.
+	public static final long TILE_CACHE_BYTES = 64L * 1024 * 1024;
 
 	// how far away from a node you can click before it isn't counted.
 	public static final double MAX_CLICKED_DISTANCE = 0.15;
 
-	// these two define the 'view' of the program, ie. where you're looking and
-	// how zoomed in you are.
+	// these define the 'view' of the program, ie. where you're looking and
+	// how zoomed in you are. The scale is always ZOOM_FACTOR to the power of
+	// the zoom level, worked out afresh rather than multiplied up, so going
+	// back to a zoom level gives exactly the same scale (and its tiles).
 	private Location origin;
+	private int zoomLevel;
 	private double scale;
 
 	// our data structures.
 	private Graph graph;
 	private Trie trie;
+	private final RouteCache routeCache = new RouteCache(ROUTE_CACHE_SIZE);
+	// draws map tiles in the background, redrawing as each is ready.
+	private final TileCache tileCache = new TileCache(TILE_CACHE_BYTES, Math
+			.max(1, Runtime.getRuntime().availableProcessors() - 1),
+			new Runnable() {
+				public void run() {
+					redraw();
+				}
+			});
 
 	// next click will initialise start/end node
 	private boolean selectStart;
@@ -68,25 +95,20 @@ public class Mapper extends GUI {
 
 	@Override
 	protected void redraw(Graphics g) {
-		if (graph != null)
-			graph.draw(g, getDrawingAreaDimension(), origin, scale);
+		if (graph != null) {
+			// the base map comes from the tiles, and the rest goes over it.
+			Dimension area = getDrawingAreaDimension();
+			tileCache.draw(g, graph, area, origin, scale);
+			graph.drawOverlays(g, area, origin, scale);
+		}
 	}
 
 	@Override
 	protected void onClick(MouseEvent e) {
 		Location clicked = Location.newFromPoint(e.getPoint(), origin, scale);
 		// find the closest node.
-		double bestDist = Double.MAX_VALUE;
-		Node closest = null;
-
-		for (Node node : graph.getNodes().values()) {
-			double distance = clicked.distance(node.location);
-			if (distance < bestDist) {
-				bestDist = distance;
-				closest = node;
-			}
-		}
-		if (clicked.distance(closest.location) < MAX_CLICKED_DISTANCE) {
+		Node closest = graph.findNearestNode(clicked, MAX_CLICKED_DISTANCE);
+		if (closest != null) {
 			if (selectStart) {
 				graph.setStartNode(closest);
 				if (graph.getStartNode() != null) {
@@ -108,8 +130,8 @@ public class Mapper extends GUI {
 			// if it's close enough, highlight it and show some information.
 			else {
 				graph.setHighlight(closest);
-				ArtPointSearch  artPointSearch = new ArtPointSearch(graph.getHiglight());
-				graph.setCurrentArtPoints(artPointSearch.getArticulations());
+				graph.setCurrentArtPoints(graph.getBiconnectedIndex()
+						.getArticulations(closest.getIndex()));
 				getTextOutputArea().setText(closest.toString());
 			}
 		}
@@ -176,21 +198,27 @@ public class Mapper extends GUI {
 				// max/min scale, but it means that we always zoom exactly to
 				// the centre.
 				scaleOrigin(true);
-				scale *= ZOOM_FACTOR;
+				scale = Math.pow(ZOOM_FACTOR, ++zoomLevel);
 			}
 		} else if (m == GUI.Move.ZOOM_OUT) {
 			if (scale > MIN_ZOOM) {
 				scaleOrigin(false);
-				scale /= ZOOM_FACTOR;
+				scale = Math.pow(ZOOM_FACTOR, --zoomLevel);
 			}
 		}
 	}
 
 	@Override
-	protected void onLoad(File nodes, File roads, File segments, File polygons) {
-		graph = new Graph(nodes, roads, segments, polygons);
+	protected void onLoad(File nodes, File roads, File segments,
+			File polygons, File restrictions) {
+		graph = new Graph(nodes, roads, segments, polygons, restrictions);
+		// the cached routes and tiles were for the old graph.
+		routeCache.clear();
+		tileCache.clear();
+		graph.setRouteCache(routeCache);
 		trie = new Trie(graph.getRoads().values());
 		origin = new Location(-250, 250); // close enough
+		zoomLevel = 0;
 		scale = 1;
 	}
 
@@ -229,6 +257,13 @@ public class Mapper extends GUI {
 				totalLength += entry.getValue();
 			}
 			getTextOutputArea().append("Total Length: " + totalLength);
+			if (!graph.getPathBridges().isEmpty()) {
+				Collection<String> bridges = new LinkedHashSet<String>();
+				for (Segment s : graph.getPathBridges())
+					bridges.add(s.road.name);
+				getTextOutputArea().append(
+						"\nNo way round (bridges): " + bridges);
+			}
 		}
 	}
 
@@ -250,6 +285,38 @@ public class Mapper extends GUI {
 		graph.displayArtPoints(false);
 	}
 
+	/**
+	 * show the service area around the start node, or the highlighted node if
+	 * there's no start.
+	 */
+	@Override
+	protected boolean displayServiceArea() {
+		if (graph == null)
+			return false;
+		Node from = graph.getStartNode() != null ? graph.getStartNode()
+				: graph.getHiglight();
+		if (from == null) {
+			getTextOutputArea().setText("Select a node first");
+			return false;
+		}
+		boolean byTime = graph.getWeighting() == Weighting.TIME;
+		ServiceArea area = graph.findServiceArea(from,
+				byTime ? SERVICE_AREA_TIME : SERVICE_AREA_DISTANCE);
+		String budget = byTime ? String.format("%.1f minutes",
+				SERVICE_AREA_TIME * 60) : String.format("%.1fkm",
+				SERVICE_AREA_DISTANCE);
+		getTextOutputArea().setText(
+				"Service area: " + area.getNodeCount() + " nodes within "
+						+ budget + " of\n" + from.toString());
+		return true;
+	}
+
+	@Override
+	protected void removeServiceArea() {
+		if (graph != null)
+			graph.clearServiceArea();
+	}
+
 	/** set next click to select start node */
 	@Override
 	protected void selectStartNode() {
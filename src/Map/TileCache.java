@@ -0,0 +1,365 @@
+package Map;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import model.Graph;
+import util.Location;
+
+/**
+ * Keeps the base map (see Graph.drawBase) as square images, so that panning
+ * around is mostly copying images that are already drawn. The map is cut into
+ * TILE_SIZE pixel tiles at each scale, numbered from the Location origin:
+ * tile (tx, ty) covers pixels tx * TILE_SIZE across and ty * TILE_SIZE down
+ * from it. Tiles are kept by scale and number, and when they take up more
+ * than the memory allowed the least recently used ones are thrown away. A
+ * tile is only found again at exactly the same scale, so callers should come
+ * back to a zoom level with the same scale, not one drifted by rounding (as
+ * Mapper does, working each one out from its zoom level).
+ *
+ * Made with a number of threads, tiles that aren't cached are drawn in the
+ * background, each worker into its own image, so drawing never holds up the
+ * caller (the Swing event thread). Until a tile is ready its part of the
+ * screen is filled in from tiles already drawn at the nearest other scale,
+ * stretched to fit, and when it's ready the cache says so, so the screen can
+ * be drawn again. A tile that's gone off screen before a worker gets to it
+ * isn't drawn at all.
+ *
+ * The tiles are of one particular graph, so clear the cache whenever a
+ * different graph is loaded.
+ */
+public class TileCache {
+
+	public static final int TILE_SIZE = 256;
+	// an ARGB tile's pixels.
+	private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+	// how many other scales to look through for a stand-in tile.
+	private static final int FALLBACK_SCALES = 3;
+
+	private final long capacityBytes;
+	private final LinkedHashMap<Key, BufferedImage> tiles;
+	// how many tiles are cached at each scale, for finding stand-ins.
+	private final Map<Double, Integer> scales = new HashMap<Double, Integer>();
+	private long hits, misses;
+
+	// the background workers, or null to draw tiles as they're needed.
+	private final ExecutorService pool;
+	private final Runnable onTileDrawn;
+	// tiles waiting for a worker, with the last frame that wanted them.
+	private final Map<Key, Long> pending = new HashMap<Key, Long>();
+	// counts the frames drawn, and the graphs (clears) seen.
+	private long frame, generation;
+
+	/**
+	 * Makes a cache that keeps at most about the given number of bytes of
+	 * tiles, and draws them as they're needed.
+	 */
+	public TileCache(long capacityBytes) {
+		this(capacityBytes, 0, null);
+	}
+
+	/**
+	 * Makes a cache that keeps at most about the given number of bytes of
+	 * tiles, and draws them on the given number of background threads,
+	 * running onTileDrawn (from a worker) each time one is ready. With no
+	 * threads, tiles are drawn as they're needed.
+	 */
+	public TileCache(long capacityBytes, int threads, Runnable onTileDrawn) {
+		if (capacityBytes < TILE_BYTES)
+			throw new IllegalArgumentException("room for less than one tile");
+		if (threads < 0)
+			throw new IllegalArgumentException("negative thread count");
+		this.capacityBytes = capacityBytes;
+		// access order makes iteration (and so eviction) least recent first.
+		tiles = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+		this.onTileDrawn = onTileDrawn;
+		this.pool = threads == 0 ? null : Executors.newFixedThreadPool(
+				threads, new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "tile-renderer");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Draws the graph's base map over the screen, from the tiles, drawing any
+	 * that aren't in the cache yet.
+	 */
+	public void draw(Graphics g, Graph graph, Dimension screen,
+			Location origin, double scale) {
+		// where the top left of the screen is, in pixels from the origin.
+		long left = (long) Math.floor(origin.x * scale);
+		long top = (long) Math.floor(-origin.y * scale);
+		long firstX = Math.floorDiv(left, TILE_SIZE);
+		long firstY = Math.floorDiv(top, TILE_SIZE);
+		long lastX = Math.floorDiv(left + screen.width, TILE_SIZE);
+		long lastY = Math.floorDiv(top + screen.height, TILE_SIZE);
+		long thisFrame;
+		synchronized (this) {
+			thisFrame = ++frame;
+		}
+
+		for (long ty = firstY; ty <= lastY; ty++) {
+			for (long tx = firstX; tx <= lastX; tx++) {
+				int x = (int) (tx * TILE_SIZE - left);
+				int y = (int) (ty * TILE_SIZE - top);
+				BufferedImage tile = tile(graph, scale, tx, ty, thisFrame);
+				if (tile != null)
+					g.drawImage(tile, x, y, null);
+				else
+					drawStandIn(g, scale, tx, ty, x, y);
+			}
+		}
+	}
+
+	/**
+	 * Lets the background threads go. The cache still works afterwards, but
+	 * draws tiles as they're needed.
+	 */
+	public void shutdown() {
+		if (pool != null)
+			pool.shutdownNow();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	/**
+	 * Throws away every tile, and resets the counters.
+	 */
+	public synchronized void clear() {
+		tiles.clear();
+		scales.clear();
+		pending.clear();
+		generation++;
+		hits = misses = 0;
+	}
+
+	/**
+	 * Returns the tile, if it's cached or there are no workers to wait for;
+	 * otherwise has a worker draw it, and returns null.
+	 */
+	private BufferedImage tile(final Graph graph, final double scale,
+			final long tx, final long ty, long thisFrame) {
+		final Key key = new Key(scale, tx, ty);
+		final long tileGeneration;
+		boolean background;
+		synchronized (this) {
+			BufferedImage tile = tiles.get(key);
+			if (tile != null) {
+				hits++;
+				return tile;
+			}
+			misses++;
+			tileGeneration = generation;
+			background = pool != null && !pool.isShutdown();
+			// if it's already on its way, just note it's still wanted.
+			if (background && pending.put(key, thisFrame) != null)
+				return null;
+		}
+		if (!background) {
+			BufferedImage tile = render(graph, scale, tx, ty);
+			put(key, tile, tileGeneration);
+			return tile;
+		}
+
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					// leave it if it's gone off screen (not wanted by the last
+					// frame), or the graph has changed, while it was waiting.
+					synchronized (TileCache.this) {
+						Long wanted = pending.get(key);
+						if (tileGeneration != generation || wanted == null
+								|| wanted < frame) {
+							if (tileGeneration == generation)
+								pending.remove(key);
+							return;
+						}
+					}
+					BufferedImage tile = render(graph, scale, tx, ty);
+					boolean kept;
+					synchronized (TileCache.this) {
+						kept = put(key, tile, tileGeneration);
+						if (tileGeneration == generation)
+							pending.remove(key);
+					}
+					if (kept && onTileDrawn != null)
+						onTileDrawn.run();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// shut down since; it'll be drawn directly next time.
+			synchronized (this) {
+				pending.remove(key);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Fills in the tile at (x, y) on screen with the parts of it that are
+	 * cached at the nearest other scale that has any, stretched to fit.
+	 */
+	private void drawStandIn(Graphics g, double scale, long tx, long ty,
+			int x, int y) {
+		// the tile's corners, in the same units as Location.
+		double minX = tx * TILE_SIZE / scale, maxY = -ty * TILE_SIZE / scale;
+		double maxX = (tx + 1) * TILE_SIZE / scale;
+		double minY = -(ty + 1) * TILE_SIZE / scale;
+
+		Graphics clipped = g.create();
+		try {
+			clipped.clipRect(x, y, TILE_SIZE, TILE_SIZE);
+			for (double other : otherScales(scale)) {
+				// the other scale's tiles that overlap this one.
+				long firstX = (long) Math.floor(minX * other / TILE_SIZE);
+				long lastX = (long) Math.floor(maxX * other / TILE_SIZE);
+				long firstY = (long) Math.floor(-maxY * other / TILE_SIZE);
+				long lastY = (long) Math.floor(-minY * other / TILE_SIZE);
+				if ((lastX - firstX + 1) * (lastY - firstY + 1) > 64)
+					continue;
+				boolean found = false;
+				double size = TILE_SIZE * scale / other;
+				for (long oy = firstY; oy <= lastY; oy++) {
+					for (long ox = firstX; ox <= lastX; ox++) {
+						BufferedImage tile;
+						synchronized (this) {
+							tile = tiles.get(new Key(other, ox, oy));
+						}
+						if (tile == null)
+							continue;
+						found = true;
+						// where the other tile's corner lands on screen.
+						double left = x + (ox * TILE_SIZE / other - minX)
+								* scale;
+						double top = y + (oy * TILE_SIZE / other + maxY)
+								* scale;
+						clipped.drawImage(tile, (int) Math.floor(left),
+								(int) Math.floor(top), (int) Math.ceil(left
+										+ size), (int) Math.ceil(top + size),
+								0, 0, TILE_SIZE, TILE_SIZE, null);
+					}
+				}
+				if (found)
+					return;
+			}
+		} finally {
+			clipped.dispose();
+		}
+	}
+
+	/**
+	 * The scales with tiles cached, other than this one, nearest first.
+	 */
+	private synchronized List<Double> otherScales(final double scale) {
+		List<Double> others = new ArrayList<Double>(scales.keySet());
+		others.remove(scale);
+		Collections.sort(others, new Comparator<Double>() {
+			public int compare(Double a, Double b) {
+				return Double.compare(Math.abs(Math.log(a / scale)),
+						Math.abs(Math.log(b / scale)));
+			}
+		});
+		return others.subList(0, Math.min(FALLBACK_SCALES, others.size()));
+	}
+
+	/**
+	 * Draws one tile of the base map, on a transparent background.
+	 */
+	static BufferedImage render(Graph graph, double scale, long tx, long ty) {
+		BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = tile.createGraphics();
+		try {
+			Location corner = new Location(tx * TILE_SIZE / scale, -ty
+					* TILE_SIZE / scale);
+			graph.drawBase(g, new Dimension(TILE_SIZE, TILE_SIZE), corner,
+					scale);
+		} finally {
+			g.dispose();
+		}
+		return tile;
+	}
+
+	/**
+	 * Caches the tile, unless it was drawn for a graph since cleared, and
+	 * returns whether it did.
+	 */
+	private synchronized boolean put(Key key, BufferedImage tile,
+			long tileGeneration) {
+		if (tileGeneration != generation)
+			return false;
+		if (tiles.put(key, tile) == null)
+			count(key.scale, 1);
+		// evict least recently used tiles until they fit.
+		Iterator<Key> eldest = tiles.keySet().iterator();
+		while (tiles.size() * TILE_BYTES > capacityBytes && eldest.hasNext()) {
+			count(eldest.next().scale, -1);
+			eldest.remove();
+		}
+		return true;
+	}
+
+	private void count(double scale, int change) {
+		Integer count = scales.get(scale);
+		int now = (count == null ? 0 : count) + change;
+		if (now == 0)
+			scales.remove(scale);
+		else
+			scales.put(scale, now);
+	}
+
+	private static final class Key {
+		final double scale;
+		final long scaleBits, tx, ty;
+
+		Key(double scale, long tx, long ty) {
+			this.scale = scale;
+			this.scaleBits = Double.doubleToLongBits(scale);
+			this.tx = tx;
+			this.ty = ty;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return scaleBits == other.scaleBits && tx == other.tx
+					&& ty == other.ty;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = (scaleBits * 31 + tx) * 31 + ty;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
@@ -1,99 +1,136 @@
 package a_star;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Set;
-
-import model.Node;
-import model.Segment;
-
-public class AStar {
+import model.CompactGraph;
+import model.TravelMode;
+
+/**
+ * A* search over the CompactGraph's forward edges, using (scaled) straight
+ * line distance to the goal as the heuristic, or the better of that and the
+ * landmark bound if it's given Landmarks (ALT). Edges cost their length or
+ * their travel time, depending on the Weighting, and edges the TravelMode
+ * isn't allowed on are skipped (and one-way edges it may go against are
+ * also taken backwards). Nodes are referred to by their
+ * dense index, the fringe is an IndexedHeap so a node is queued at most once
+ * (with its key lowered when a shorter way to it turns up), and nodes are
+ * closed as they're polled, so each is expanded at most once.
+ *
+ * One AStar can be shared by any number of threads. Each thread keeps its own
+ * SearchState, preallocated on its first search and reset in O(1) for every
+ * search after, so a steady stream of searches allocates nothing but the
+ * Routes they return.
+ */
+public class AStar implements PathFinder {
+
+	private final CompactGraph graph;
+	// null for plain straight line A*.
+	private final Landmarks landmarks;
+	private final Weighting weighting;
+	private final double[] costs;
+	private final TravelMode travelMode;
+
+	private final ThreadLocal<SearchState> states = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(graph.nodeCount);
+		}
+	};
 
-	// ordered by an estimated total cost to goal
-	private PriorityQueue<FringeNode> fringe;
+	public AStar(CompactGraph graph) {
+		this(graph, null);
+	}
 
-	// set of visited nodes
-	private Set<Node> visited;
+	public AStar(CompactGraph graph, Landmarks landmarks) {
+		this(graph, landmarks, Weighting.DISTANCE, TravelMode.ANY);
+	}
 
-	// Returned path
-	private List<Segment> path;
+	/**
+	 * Makes a search minimising the given weighting for the given mode of
+	 * travel. Landmarks, if given, must have been made with the same
+	 * weighting.
+	 */
+	public AStar(CompactGraph graph, Landmarks landmarks, Weighting weighting,
+			TravelMode travelMode) {
+		if (landmarks != null && landmarks.getWeighting() != weighting)
+			throw new IllegalArgumentException("landmarks are for "
+					+ landmarks.getWeighting() + ", not " + weighting);
+		this.graph = graph;
+		this.landmarks = landmarks;
+		this.weighting = weighting;
+		this.costs = weighting.costs(graph, travelMode);
+		this.travelMode = travelMode;
+	}
 
-	// Distance from/to nodes
-	private Node start;
-	private Node goal;
+	@Override
+	public Route search(int start, int goal) {
+		SearchState state = states.get();
+		state.reset();
+		IndexedHeap fringe = state.fringe;
 
-	public AStar(Node start, Node goal) {
-		this.start = start;
-		this.goal = goal;
-		fringe = new PriorityQueue<FringeNode>();
-		visited = new HashSet<Node>();
-	}
+		state.reach(start, 0, -1);
+		fringe.offer(start, estimateFromToEnd(start, goal));
+		int settled = 0;
 
-	public List<Segment> search() {
-		// add start to fringe
-		fringe.offer((new FringeNode(getStartNode(), null, null, 0,
-				estimateFromToEnd(getStartNode()))));
 		while (!fringe.isEmpty()) {
-			// poll highest priority node from fringe
-			FringeNode currentFringeNode = fringe.poll();
-			// if node has been visited, do not check again
-			if (!(visited.contains(currentFringeNode.getNode()))) {
-				visited.add(currentFringeNode.getNode());
-			}
+			// poll highest priority node from fringe and close it
+			int node = fringe.poll();
+			state.close(node);
+			settled++;
 			// goal node has been found.
-			if (currentFringeNode.getNode().equals(getEndNode())) {
-				generatePath(currentFringeNode);
-				return getPath();
-			}
-			for (Segment s : currentFringeNode.getNode().getExitNeighbours()) {
-				// read the node at the end of the segment, if it has
-				// not been visited add it to the priority queue
-				Node neighbour = s.getEnd();
-				if (!(visited.contains(neighbour)) && !(fringe.contains(neighbour))) {
-					fringe.offer((new FringeNode(neighbour, currentFringeNode, s,
-							costToHere(currentFringeNode, s), estimateFromToEnd(neighbour))));
-				}
+			if (node == goal)
+				return generatePath(state, goal, settled);
+
+			double costToNode = state.getCost(node);
+			for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++)
+				if (travelMode.allows(graph.edgeAccess[e]))
+					relax(state, graph.targets[e], e, costToNode, goal);
+			// and against one-way roads, for modes that can.
+			if (!travelMode.goesAgainstOneWay())
+				continue;
+			for (int i = graph.reverseOffsets[node]; i < graph.reverseOffsets[node + 1]; i++) {
+				int e = graph.reverseEdges[i];
+				if (travelMode.allowsAgainst(graph.edgeAccess[e]))
+					relax(state, graph.sources[e], e, costToNode, goal);
 			}
 		}
 		return null;
 	}
 
-	private double estimateFromToEnd(Node from) {
-		return from.distanceTo(getEndNode());
-	}
-
-	private void generatePath(FringeNode n) {
-		path = new ArrayList<Segment>();
-		while (n.getFrom() != null) {
-			Segment s = n.getSegmentFrom();
-			path.add(s);
-			n = n.getFrom();
+	/**
+	 * Queues the neighbour, or lowers its key, if going there along the edge
+	 * is the shortest way to it found so far.
+	 */
+	private void relax(SearchState state, int neighbour, int e,
+			double costToNode, int goal) {
+		if (state.isClosed(neighbour))
+			return;
+		double cost = costToNode + costs[e];
+		if (cost < state.getCost(neighbour)) {
+			state.reach(neighbour, cost, e);
+			state.fringe.offer(neighbour,
+					cost + estimateFromToEnd(neighbour, goal));
 		}
-		setPath(path);
-	}
-
-	private double costToHere(FringeNode node, Segment s) {
-		double totalCostToHere = node.getCostToHere();
-		double actualLength = s.getLength();
-		return totalCostToHere + actualLength;
-	}
-
-	/** getters and setters */
-	public Node getStartNode() {
-		return start;
-	}
-
-	public Node getEndNode() {
-		return goal;
 	}
 
-	public List<Segment> getPath() {
-		return path;
+	private double estimateFromToEnd(int from, int goal) {
+		// both are lower bounds, so the larger is too, and the max of two
+		// consistent heuristics is still consistent.
+		if (landmarks == null)
+			return weighting.estimate(graph, travelMode, from, goal);
+		return Math.max(weighting.estimate(graph, travelMode, from, goal),
+				landmarks.estimate(from, goal));
 	}
 
-	public void setPath(List<Segment> path) {
-		this.path = path;
+	/** walk the edges back from the goal, giving a path from the start */
+	private Route generatePath(SearchState state, int goal, int settled) {
+		int length = 0;
+		for (int node = goal, e; (e = state.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			length++;
+
+		int[] edges = new int[length];
+		for (int node = goal, e; (e = state.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			edges[--length] = e;
+		return new Route(edges, state.getCost(goal), settled);
 	}
 }
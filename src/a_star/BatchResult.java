@@ -0,0 +1,74 @@
+package a_star;
+
+import java.util.Arrays;
+
+/**
+ * The routes found by a BatchRouter, one per query and in the same order, and
+ * how long it took: the wall clock time for the whole batch, and the time
+ * each query took on its own, from which the throughput and the tail
+ * latencies come.
+ */
+public class BatchResult {
+
+	private final Route[] routes;
+	// per-query latencies, sorted.
+	private final long[] latencies;
+	private final long elapsed;
+
+	public BatchResult(Route[] routes, long[] latencies, long elapsed) {
+		this.routes = routes;
+		this.latencies = latencies.clone();
+		Arrays.sort(this.latencies);
+		this.elapsed = elapsed;
+	}
+
+	/**
+	 * Returns the route for each query, null where there wasn't one.
+	 */
+	public Route[] getRoutes() {
+		return routes;
+	}
+
+	/**
+	 * Returns the length of each route, infinity where there wasn't one.
+	 */
+	public double[] getDistances() {
+		double[] distances = new double[routes.length];
+		for (int i = 0; i < routes.length; i++)
+			distances[i] = routes[i] == null ? Double.POSITIVE_INFINITY
+					: routes[i].cost;
+		return distances;
+	}
+
+	/** queries completed per second of wall clock time */
+	public double getThroughput() {
+		return elapsed == 0 ? 0 : routes.length * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns the latency (in nanoseconds) that the given fraction of queries
+	 * came in under, eg. 0.99 for the 99th percentile.
+	 */
+	public long getLatencyPercentile(double fraction) {
+		if (latencies.length == 0)
+			return 0;
+		int i = (int) Math.ceil(fraction * latencies.length) - 1;
+		return latencies[Math.max(0, Math.min(i, latencies.length - 1))];
+	}
+
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"%d routes in %.1f ms: %.0f routes/s, latency p50 %.3f ms, "
+						+ "p90 %.3f ms, p99 %.3f ms, max %.3f ms",
+				routes.length, elapsed / 1e6, getThroughput(),
+				getLatencyPercentile(0.5) / 1e6,
+				getLatencyPercentile(0.9) / 1e6,
+				getLatencyPercentile(0.99) / 1e6,
+				getLatencyPercentile(1.0) / 1e6);
+	}
+}
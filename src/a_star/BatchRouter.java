@@ -0,0 +1,140 @@
+package a_star;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CompactGraph;
+import model.Graph;
+import model.Node;
+
+/**
+ * Runs many route searches at once, for offline jobs that need routes or
+ * distances between lots of pairs of nodes. The queries are shared out
+ * between a fixed pool of threads, all searching the same read-only graph;
+ * each thread reuses its own search state, so the work is almost entirely
+ * the searching itself.
+ *
+ * Call shutdown when finished with it, to let the threads go.
+ */
+public class BatchRouter {
+
+	// how many queries a thread takes at a time.
+	private static final int BLOCK_SIZE = 32;
+
+	private final Graph graph;
+	private final PathFinder engine;
+	private final ExecutorService pool;
+	private final int threads;
+
+	public BatchRouter(Graph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Makes a router for the shortest routes, keeping to the graph's turn
+	 * restrictions if it has any (as DistanceMatrix does).
+	 */
+	public BatchRouter(Graph graph, int threads) {
+		this(graph, defaultEngine(graph.getCompactGraph()), threads);
+	}
+
+	/**
+	 * Makes a router that runs its searches with the given engine, which
+	 * must be searching the given graph.
+	 */
+	public BatchRouter(Graph graph, PathFinder engine, int threads) {
+		this.graph = graph;
+		this.engine = engine;
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "batch-router");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private static PathFinder defaultEngine(CompactGraph graph) {
+		if (graph.turnRestrictions.size() > 0)
+			return SearchMode.TURN_RESTRICTED.create(graph, null);
+		return SearchMode.ASTAR.create(graph, null);
+	}
+
+	/**
+	 * Finds the route for every (startNodeIDs[i], goalNodeIDs[i]) pair, using
+	 * the node IDs from the data files. The i'th route in the result is null
+	 * if there's no way from that start to that goal.
+	 */
+	public BatchResult route(int[] startNodeIDs, int[] goalNodeIDs) {
+		if (startNodeIDs.length != goalNodeIDs.length)
+			throw new IllegalArgumentException(
+					"need the same number of starts and goals");
+
+		final int count = startNodeIDs.length;
+		final int[] starts = toIndices(startNodeIDs);
+		final int[] goals = toIndices(goalNodeIDs);
+		final Route[] routes = new Route[count];
+		final long[] latencies = new long[count];
+		final AtomicInteger next = new AtomicInteger();
+
+		// every thread keeps taking the next block of queries until they're
+		// all gone, which balances out long and short searches.
+		Runnable worker = new Runnable() {
+			public void run() {
+				int from;
+				while ((from = next.getAndAdd(BLOCK_SIZE)) < count) {
+					int to = Math.min(from + BLOCK_SIZE, count);
+					for (int i = from; i < to; i++) {
+						long begin = System.nanoTime();
+						routes[i] = engine.search(starts[i], goals[i]);
+						latencies[i] = System.nanoTime() - begin;
+					}
+				}
+			}
+		};
+
+		long begin = System.nanoTime();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < threads; i++)
+			futures.add(pool.submit(worker));
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("batch routing was interrupted.");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("batch routing failed.", e.getCause());
+		}
+		long elapsed = System.nanoTime() - begin;
+
+		return new BatchResult(routes, latencies, elapsed);
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	public CompactGraph getCompactGraph() {
+		return graph.getCompactGraph();
+	}
+
+	private int[] toIndices(int[] nodeIDs) {
+		int[] indices = new int[nodeIDs.length];
+		for (int i = 0; i < nodeIDs.length; i++) {
+			Node node = graph.getNodes().get(nodeIDs[i]);
+			if (node == null)
+				throw new IllegalArgumentException("no node with ID "
+						+ nodeIDs[i]);
+			indices[i] = node.getIndex();
+		}
+		return indices;
+	}
+}
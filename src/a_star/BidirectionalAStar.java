@@ -0,0 +1,148 @@
+package a_star;
+
+import model.CompactGraph;
+import model.TravelMode;
+
+/**
+ * Bidirectional A*: one search runs forwards from the start over the exit
+ * edges, another runs backwards from the goal over the enter edges (the
+ * CompactGraph's reverse arrays), and they stop once they've met and
+ * neither can find anything shorter.
+ *
+ * Both searches use the average potential p(v) = (h(v, goal) - h(start, v)) /
+ * 2, forwards, and -p(v) backwards. Unlike using h(v, goal) and h(start, v)
+ * directly, this keeps the two searches consistent with each other, so the
+ * plain bidirectional Dijkstra stopping rule still holds: once the smallest
+ * forward key plus the smallest backward key is at least the best path found
+ * so far, that path is the shortest.
+ *
+ * As with AStar, edge costs come from the Weighting, edges are filtered by the
+ * TravelMode (with one-way edges taken backwards too, for modes that can),
+ * and each thread keeps its own (pair of) SearchStates.
+ */
+public class BidirectionalAStar implements PathFinder {
+
+	private final CompactGraph graph;
+	private final Weighting weighting;
+	private final double[] costs;
+	private final TravelMode travelMode;
+
+	private final ThreadLocal<SearchState[]> states = new ThreadLocal<SearchState[]>() {
+		@Override
+		protected SearchState[] initialValue() {
+			return new SearchState[] { new SearchState(graph.nodeCount),
+					new SearchState(graph.nodeCount) };
+		}
+	};
+
+	public BidirectionalAStar(CompactGraph graph) {
+		this(graph, Weighting.DISTANCE, TravelMode.ANY);
+	}
+
+	public BidirectionalAStar(CompactGraph graph, Weighting weighting,
+			TravelMode travelMode) {
+		this.graph = graph;
+		this.weighting = weighting;
+		this.costs = weighting.costs(graph, travelMode);
+		this.travelMode = travelMode;
+	}
+
+	@Override
+	public Route search(int start, int goal) {
+		SearchState[] pair = states.get();
+		SearchState forward = pair[0], backward = pair[1];
+		forward.reset();
+		backward.reset();
+
+		forward.reach(start, 0, -1);
+		forward.fringe.offer(start, potential(start, start, goal));
+		backward.reach(goal, 0, -1);
+		backward.fringe.offer(goal, -potential(goal, start, goal));
+
+		// the best path found so far, and the node it goes through.
+		double best = start == goal ? 0 : Double.POSITIVE_INFINITY;
+		int meeting = start == goal ? start : -1;
+		int settled = 0;
+		int passes = travelMode.goesAgainstOneWay() ? 2 : 1;
+
+		while (!forward.fringe.isEmpty() && !backward.fringe.isEmpty()) {
+			if (forward.fringe.peekKey() + backward.fringe.peekKey() >= best)
+				break;
+
+			// grow whichever side has the smaller fringe.
+			boolean forwards = forward.fringe.size() <= backward.fringe.size();
+			SearchState side = forwards ? forward : backward;
+			SearchState other = forwards ? backward : forward;
+			int node = side.fringe.poll();
+			side.close(node);
+			settled++;
+			double costToNode = side.getCost(node);
+			// forwards, along the exit edges and then against one-way enter
+			// edges; backwards, along the enter edges and then against
+			// one-way exit edges.
+			for (int pass = 0; pass < passes; pass++) {
+				boolean along = pass == 0;
+				int[] offsets = forwards == along ? graph.offsets
+						: graph.reverseOffsets;
+				for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+					int e = forwards == along ? i : graph.reverseEdges[i];
+					int neighbour = graph.otherEnd(e, node);
+					int access = graph.edgeAccess[e];
+					if (side.isClosed(neighbour)
+							|| !(along ? travelMode.allows(access)
+									: travelMode.allowsAgainst(access)))
+						continue;
+					double cost = costToNode + costs[e];
+					if (cost < side.getCost(neighbour)) {
+						side.reach(neighbour, cost, e);
+						double p = potential(neighbour, start, goal);
+						side.fringe.offer(neighbour, cost
+								+ (forwards ? p : -p));
+						if (other.isReached(neighbour)
+								&& cost + other.getCost(neighbour) < best) {
+							best = cost + other.getCost(neighbour);
+							meeting = neighbour;
+						}
+					}
+				}
+			}
+		}
+
+		if (meeting < 0)
+			return null;
+		return generatePath(forward, backward, meeting, best, settled);
+	}
+
+	/** the forward search's potential; the backward search uses its negative */
+	private double potential(int node, int start, int goal) {
+		return (weighting.estimate(graph, travelMode, node, goal) - weighting
+				.estimate(graph, travelMode, start, node)) / 2;
+	}
+
+	/**
+	 * Joins the forward path from the start to the meeting node onto the
+	 * backward path from there to the goal.
+	 */
+	private Route generatePath(SearchState forward, SearchState backward,
+			int meeting, double cost, int settled) {
+		int length = 0;
+		for (int node = meeting, e; (e = forward.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			length++;
+		int forwardLength = length;
+		for (int node = meeting, e; (e = backward.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			length++;
+
+		int[] edges = new int[length];
+		int i = forwardLength;
+		for (int node = meeting, e; (e = forward.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			edges[--i] = e;
+		i = forwardLength;
+		for (int node = meeting, e; (e = backward.getEdgeFrom(node)) >= 0; node = graph
+				.otherEnd(e, node))
+			edges[i++] = e;
+		return new Route(edges, cost, settled);
+	}
+}
@@ -0,0 +1,264 @@
+package a_star;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CompactGraph;
+import model.Graph;
+import model.Node;
+import model.TravelMode;
+import model.TurnRestrictions;
+
+/**
+ * Works out the road distance (or travel time) from each of a list of
+ * sources to each of a list of targets. Rather than a search per pair, each
+ * source gets one Dijkstra search that runs until every target has been
+ * settled, so a row of the matrix costs about as much as the route to its
+ * furthest target. Modes that can go against one-way roads do, as in AStar. The rows are shared out between a fixed pool of threads,
+ * each reusing its own search state.
+ *
+ * If the graph has turn restrictions the searches are edge-based instead,
+ * as in EdgeAStar, so the costs match the routes the route finder gives: a
+ * target's cost is that of the first edge into it to be settled. Call
+ * shutdown when finished with it, to let the threads go.
+ */
+public class DistanceMatrix {
+
+	private final Graph graph;
+	private final CompactGraph compact;
+	private final double[] costs;
+	private final TravelMode travelMode;
+	private final TurnRestrictions restrictions;
+	private final ExecutorService pool;
+	private final int threads;
+
+	private final ThreadLocal<SearchState> states = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(compact.nodeCount);
+		}
+	};
+	// only used with turn restrictions; indexed by way along an edge (see
+	// EdgeAStar).
+	private final ThreadLocal<SearchState> edgeStates = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(travelMode.goesAgainstOneWay() ? 2
+					* compact.edgeCount : compact.edgeCount);
+		}
+	};
+
+	public DistanceMatrix(Graph graph) {
+		this(graph, Weighting.DISTANCE, TravelMode.ANY, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	public DistanceMatrix(Graph graph, Weighting weighting,
+			TravelMode travelMode, int threads) {
+		this.graph = graph;
+		this.compact = graph.getCompactGraph();
+		this.costs = weighting.costs(compact, travelMode);
+		this.travelMode = travelMode;
+		this.restrictions = compact.turnRestrictions;
+		this.threads = threads;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "distance-matrix");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns the matrix for the given node IDs, packed a row per source:
+	 * the cost from sourceNodeIDs[i] to targetNodeIDs[j] is at
+	 * i * targetNodeIDs.length + j, and is infinite if there's no way there.
+	 */
+	public double[] compute(int[] sourceNodeIDs, int[] targetNodeIDs) {
+		final int[] sources = toIndices(sourceNodeIDs);
+		final int[] targets = toIndices(targetNodeIDs);
+		final int width = targets.length;
+		final double[] matrix = new double[sources.length * width];
+
+		// mark the targets, counting each node once however often it's
+		// listed.
+		final boolean[] isTarget = new boolean[compact.nodeCount];
+		int distinct = 0;
+		for (int target : targets) {
+			if (!isTarget[target]) {
+				isTarget[target] = true;
+				distinct++;
+			}
+		}
+		final int targetCount = distinct;
+		final AtomicInteger next = new AtomicInteger();
+
+		Runnable worker = new Runnable() {
+			public void run() {
+				int row;
+				while ((row = next.getAndIncrement()) < sources.length) {
+					SearchState state = states.get();
+					if (restrictions.size() > 0)
+						edgeSearch(edgeStates.get(), state, sources[row],
+								isTarget, targetCount);
+					else
+						search(state, sources[row], isTarget, targetCount);
+					for (int j = 0; j < width; j++)
+						matrix[row * width + j] = state.getCost(targets[j]);
+				}
+			}
+		};
+
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < Math.min(threads, sources.length); i++)
+			futures.add(pool.submit(worker));
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("distance matrix was interrupted.");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("distance matrix failed.",
+					e.getCause());
+		}
+		return matrix;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Dijkstra from the source, stopping as soon as all the targets are
+	 * settled. Every target left reached is then settled, with its final
+	 * cost, and the rest can't be reached at all.
+	 */
+	private void search(SearchState state, int source, boolean[] isTarget,
+			int targetCount) {
+		state.reset();
+		IndexedHeap fringe = state.fringe;
+		state.reach(source, 0, -1);
+		fringe.offer(source, 0);
+		int remaining = targetCount;
+
+		while (!fringe.isEmpty()) {
+			int node = fringe.poll();
+			state.close(node);
+			if (isTarget[node] && --remaining == 0)
+				return;
+
+			double costToNode = state.getCost(node);
+			for (int e = compact.offsets[node]; e < compact.offsets[node + 1]; e++)
+				if (travelMode.allows(compact.edgeAccess[e]))
+					relax(state, compact.targets[e], e, costToNode + costs[e]);
+			// and against one-way roads, for modes that can.
+			if (!travelMode.goesAgainstOneWay())
+				continue;
+			for (int i = compact.reverseOffsets[node]; i < compact.reverseOffsets[node + 1]; i++) {
+				int e = compact.reverseEdges[i];
+				if (travelMode.allowsAgainst(compact.edgeAccess[e]))
+					relax(state, compact.sources[e], e, costToNode + costs[e]);
+			}
+		}
+	}
+
+	private static void relax(SearchState state, int neighbour, int e,
+			double cost) {
+		if (!state.isClosed(neighbour) && cost < state.getCost(neighbour)) {
+			state.reach(neighbour, cost, e);
+			state.fringe.offer(neighbour, cost);
+		}
+	}
+
+	/**
+	 * The same search over edges, keeping to the turn restrictions. Each
+	 * node's cost goes into the node state as the first edge into it is
+	 * settled, so the rows are filled in the same way.
+	 */
+	private void edgeSearch(SearchState state, SearchState nodes, int source,
+			boolean[] isTarget, int targetCount) {
+		state.reset();
+		nodes.reset();
+		IndexedHeap fringe = state.fringe;
+		nodes.reach(source, 0, -1);
+		nodes.close(source);
+		int remaining = targetCount;
+		if (isTarget[source] && --remaining == 0)
+			return;
+
+		// any way out of the source can begin the route.
+		expand(state, source, -1, 0);
+
+		while (!fringe.isEmpty()) {
+			int way = fringe.poll();
+			state.close(way);
+			int node = arrival(way);
+			double costToNode = state.getCost(way);
+			if (!nodes.isClosed(node)) {
+				nodes.reach(node, costToNode, way);
+				nodes.close(node);
+				if (isTarget[node] && --remaining == 0)
+					return;
+			}
+			expand(state, node, way, costToNode);
+		}
+	}
+
+	/**
+	 * Queues the ways on from the node, arriving along the given way (or -1
+	 * at the source), as EdgeAStar does.
+	 */
+	private void expand(SearchState state, int node, int from,
+			double costToNode) {
+		int edgeCount = compact.edgeCount;
+		boolean restricted = from >= 0 && from < edgeCount
+				&& restrictions.isRestricted(from);
+		for (int e = compact.offsets[node]; e < compact.offsets[node + 1]; e++) {
+			if (!travelMode.allows(compact.edgeAccess[e])
+					|| (restricted && restrictions.isForbidden(from, e)))
+				continue;
+			offer(state, e, from, costToNode + costs[e]);
+		}
+		if (!travelMode.goesAgainstOneWay())
+			return;
+		for (int i = compact.reverseOffsets[node]; i < compact.reverseOffsets[node + 1]; i++) {
+			int e = compact.reverseEdges[i];
+			if (travelMode.allowsAgainst(compact.edgeAccess[e]))
+				offer(state, edgeCount + e, from, costToNode + costs[e]);
+		}
+	}
+
+	private static void offer(SearchState state, int way, int from,
+			double cost) {
+		if (!state.isClosed(way) && cost < state.getCost(way)) {
+			state.reach(way, cost, from);
+			state.fringe.offer(way, cost);
+		}
+	}
+
+	/** the node a way along an edge ends at; see EdgeAStar */
+	private int arrival(int way) {
+		return way < compact.edgeCount ? compact.targets[way]
+				: compact.sources[way - compact.edgeCount];
+	}
+
+	private int[] toIndices(int[] nodeIDs) {
+		int[] indices = new int[nodeIDs.length];
+		for (int i = 0; i < nodeIDs.length; i++) {
+			Node node = graph.getNodes().get(nodeIDs[i]);
+			if (node == null)
+				throw new IllegalArgumentException("no node with ID "
+						+ nodeIDs[i]);
+			indices[i] = node.getIndex();
+		}
+		return indices;
+	}
+}
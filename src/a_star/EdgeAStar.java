@@ -0,0 +1,133 @@
+package a_star;
+
+import model.CompactGraph;
+import model.TravelMode;
+import model.TurnRestrictions;
+
+/**
+ * Edge-based A*, for routing with turn restrictions. A node-based search
+ * keeps one best way to each node, but with forbidden turns the best way to a
+ * node isn't always the best way on from it: the shortest way in might only
+ * be allowed to turn left, when the route needs to go right. So this search
+ * is over the edges instead, keeping the best way to arrive along each edge,
+ * and a turn onto the next edge is simply never taken if it's forbidden.
+ *
+ * The heuristic is the same as AStar's, taken at the node the edge leads to,
+ * and edges are closed as they're polled, as nodes are in AStar. Checking a
+ * turn costs one flag read for the edge it's from, and a hash lookup only if
+ * that edge leads into some forbidden turn.
+ *
+ * For modes that can go against one-way roads, the search is over the ways
+ * along an edge rather than the edges: way e is edge e as it runs, and way
+ * edgeCount + e is a one-way edge e backwards. Turn restrictions are between
+ * edges as they run, so they don't apply to the backward ones.
+ */
+public class EdgeAStar implements PathFinder {
+
+	private final CompactGraph graph;
+	private final TurnRestrictions restrictions;
+	private final Weighting weighting;
+	private final double[] costs;
+	private final TravelMode travelMode;
+
+	// indexed by way along an edge rather than by node.
+	private final ThreadLocal<SearchState> states = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(travelMode.goesAgainstOneWay() ? 2
+					* graph.edgeCount : graph.edgeCount);
+		}
+	};
+
+	public EdgeAStar(CompactGraph graph) {
+		this(graph, Weighting.DISTANCE, TravelMode.ANY);
+	}
+
+	public EdgeAStar(CompactGraph graph, Weighting weighting,
+			TravelMode travelMode) {
+		this.graph = graph;
+		this.restrictions = graph.turnRestrictions;
+		this.weighting = weighting;
+		this.costs = weighting.costs(graph, travelMode);
+		this.travelMode = travelMode;
+	}
+
+	@Override
+	public Route search(int start, int goal) {
+		if (start == goal)
+			return new Route(new int[0], 0, 0);
+
+		SearchState state = states.get();
+		state.reset();
+		IndexedHeap fringe = state.fringe;
+
+		// any way out of the start can begin the route.
+		expand(state, start, -1, 0, goal);
+		int settled = 0;
+
+		while (!fringe.isEmpty()) {
+			int way = fringe.poll();
+			state.close(way);
+			settled++;
+			int node = arrival(way);
+			if (node == goal)
+				return generatePath(state, way, settled);
+			expand(state, node, way, state.getCost(way), goal);
+		}
+		return null;
+	}
+
+	/**
+	 * Queues the ways on from the node, arriving along the given way (or -1
+	 * at the start), that are allowed and cheaper than found so far.
+	 */
+	private void expand(SearchState state, int node, int from,
+			double costToNode, int goal) {
+		int edgeCount = graph.edgeCount;
+		boolean restricted = from >= 0 && from < edgeCount
+				&& restrictions.isRestricted(from);
+		for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++) {
+			if (!travelMode.allows(graph.edgeAccess[e])
+					|| (restricted && restrictions.isForbidden(from, e)))
+				continue;
+			offer(state, e, from, costToNode + costs[e], goal);
+		}
+		if (!travelMode.goesAgainstOneWay())
+			return;
+		for (int i = graph.reverseOffsets[node]; i < graph.reverseOffsets[node + 1]; i++) {
+			int e = graph.reverseEdges[i];
+			if (travelMode.allowsAgainst(graph.edgeAccess[e]))
+				offer(state, edgeCount + e, from, costToNode + costs[e], goal);
+		}
+	}
+
+	private void offer(SearchState state, int way, int from, double cost,
+			int goal) {
+		if (!state.isClosed(way) && cost < state.getCost(way)) {
+			state.reach(way, cost, from);
+			state.fringe.offer(way, cost + estimate(arrival(way), goal));
+		}
+	}
+
+	/** the node a way along an edge ends at */
+	private int arrival(int way) {
+		return way < graph.edgeCount ? graph.targets[way]
+				: graph.sources[way - graph.edgeCount];
+	}
+
+	private double estimate(int from, int goal) {
+		return weighting.estimate(graph, travelMode, from, goal);
+	}
+
+	/** follow the ways back from the last one */
+	private Route generatePath(SearchState state, int last, int settled) {
+		int length = 0;
+		for (int way = last; way >= 0; way = state.getEdgeFrom(way))
+			length++;
+
+		int[] edges = new int[length];
+		for (int way = last; way >= 0; way = state.getEdgeFrom(way))
+			edges[--length] = way % graph.edgeCount;
+		return new Route(edges, state.getCost(last), settled);
+	}
+}
@@ -0,0 +1,134 @@
+package a_star;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of dense int items (node indices), each with a double
+ * key. It remembers where every item is in the heap, so it can tell whether
+ * an item is queued and lower its key in O(log n), rather than the fringe
+ * filling up with stale duplicates.
+ */
+public class IndexedHeap {
+
+	private final int[] heap;
+	// where each item is in the heap, or -1 if it isn't queued.
+	private final int[] position;
+	private final double[] keys;
+	private int size;
+
+	public IndexedHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int item) {
+		return position[item] >= 0;
+	}
+
+	/**
+	 * Queues the item with the given key, or lowers its key if it's already
+	 * queued with a higher one.
+	 */
+	public void offer(int item, double key) {
+		if (position[item] < 0) {
+			heap[size] = item;
+			position[item] = size;
+			keys[item] = key;
+			siftUp(size++);
+		} else if (key < keys[item]) {
+			keys[item] = key;
+			siftUp(position[item]);
+		}
+	}
+
+	/**
+	 * Empties the heap. This only touches the items still queued, so it's
+	 * cheap after a search that ran to completion or stopped early.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			position[heap[i]] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Sets the key of an item, queueing it if it isn't already. Unlike offer,
+	 * this can raise the key as well as lower it.
+	 */
+	public void update(int item, double key) {
+		if (position[item] < 0) {
+			offer(item, key);
+		} else if (key < keys[item]) {
+			keys[item] = key;
+			siftUp(position[item]);
+		} else {
+			keys[item] = key;
+			siftDown(position[item]);
+		}
+	}
+
+	public int peek() {
+		return heap[0];
+	}
+
+	public double peekKey() {
+		return keys[heap[0]];
+	}
+
+	/**
+	 * Removes and returns the item with the lowest key.
+	 */
+	public int poll() {
+		int top = heap[0];
+		position[top] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int item = heap[i];
+		double key = keys[item];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[heap[parent]] <= key)
+				break;
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = item;
+		position[item] = i;
+	}
+
+	private void siftDown(int i) {
+		int item = heap[i];
+		double key = keys[item];
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+				child++;
+			if (key <= keys[heap[child]])
+				break;
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = item;
+		position[item] = i;
+	}
+}
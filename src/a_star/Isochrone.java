@@ -0,0 +1,206 @@
+package a_star;
+
+import java.util.Arrays;
+
+import model.CompactGraph;
+import model.TravelMode;
+import model.TurnRestrictions;
+
+/**
+ * Finds the service area around a node: every node and segment that can be
+ * reached from it within a budget of distance or time. It's a Dijkstra
+ * search over the exit edges that stops as soon as the cheapest node left on
+ * the fringe is over budget, so it only ever looks at the area itself (plus
+ * the ring of edges leading out of it), however big the map. Modes that can
+ * go against one-way roads do, as in AStar.
+ *
+ * If the graph has turn restrictions, the search is over edges instead, as
+ * in EdgeAStar, so the area never takes in what could only be reached
+ * through a forbidden turn: a node's cost is that of the first edge into it
+ * to be settled, and an edge is in the area if it's settled within budget.
+ *
+ * As with AStar, each thread keeps its own SearchState, so repeated queries
+ * allocate nothing but their results.
+ */
+public class Isochrone {
+
+	private final CompactGraph graph;
+	private final double[] costs;
+	private final TravelMode travelMode;
+	private final TurnRestrictions restrictions;
+
+	private final ThreadLocal<SearchState> states = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(graph.nodeCount);
+		}
+	};
+	// only used with turn restrictions; indexed by way along an edge (see
+	// EdgeAStar).
+	private final ThreadLocal<SearchState> edgeStates = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState(travelMode.goesAgainstOneWay() ? 2
+					* graph.edgeCount : graph.edgeCount);
+		}
+	};
+
+	public Isochrone(CompactGraph graph) {
+		this(graph, Weighting.DISTANCE, TravelMode.ANY);
+	}
+
+	public Isochrone(CompactGraph graph, Weighting weighting,
+			TravelMode travelMode) {
+		this.graph = graph;
+		this.costs = weighting.costs(graph, travelMode);
+		this.travelMode = travelMode;
+		this.restrictions = graph.turnRestrictions;
+	}
+
+	/**
+	 * Returns what can be reached from the start within the budget, in the
+	 * units of the weighting.
+	 */
+	public ServiceArea search(int start, double budget) {
+		if (restrictions.size() > 0)
+			return edgeSearch(start, budget);
+		SearchState state = states.get();
+		state.reset();
+		IndexedHeap fringe = state.fringe;
+		state.reach(start, 0, -1);
+		fringe.offer(start, 0);
+
+		int[] nodes = new int[64];
+		double[] nodeCosts = new double[64];
+		int nodeCount = 0;
+		int[] edges = new int[64];
+		int edgeCount = 0;
+		int passes = travelMode.goesAgainstOneWay() ? 2 : 1;
+
+		while (!fringe.isEmpty() && fringe.peekKey() <= budget) {
+			int node = fringe.poll();
+			state.close(node);
+			double costToNode = state.getCost(node);
+			if (nodeCount == nodes.length) {
+				nodes = Arrays.copyOf(nodes, nodeCount * 2);
+				nodeCosts = Arrays.copyOf(nodeCosts, nodeCount * 2);
+			}
+			nodes[nodeCount] = node;
+			nodeCosts[nodeCount++] = costToNode;
+
+			// along the exit edges, then against one-way enter edges for
+			// modes that can.
+			for (int pass = 0; pass < passes; pass++) {
+				boolean along = pass == 0;
+				int[] offsets = along ? graph.offsets : graph.reverseOffsets;
+				for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+					int e = along ? i : graph.reverseEdges[i];
+					if (!allowed(e, along))
+						continue;
+					double cost = costToNode + costs[e];
+					// the whole segment is in the area if its far end is.
+					if (cost <= budget) {
+						if (edgeCount == edges.length)
+							edges = Arrays.copyOf(edges, edgeCount * 2);
+						edges[edgeCount++] = e;
+					}
+					int neighbour = graph.otherEnd(e, node);
+					if (!state.isClosed(neighbour)
+							&& cost < state.getCost(neighbour)) {
+						state.reach(neighbour, cost, e);
+						fringe.offer(neighbour, cost);
+					}
+				}
+			}
+		}
+
+		return new ServiceArea(graph, start, budget, Arrays.copyOf(nodes,
+				nodeCount), Arrays.copyOf(nodeCosts, nodeCount),
+				Arrays.copyOf(edges, edgeCount));
+	}
+
+	/**
+	 * The same search over edges, keeping to the turn restrictions.
+	 */
+	private ServiceArea edgeSearch(int start, double budget) {
+		SearchState state = edgeStates.get();
+		state.reset();
+		SearchState settled = states.get();
+		settled.reset();
+		IndexedHeap fringe = state.fringe;
+		settled.close(start);
+
+		int[] nodes = { start, 0, 0, 0 };
+		double[] nodeCosts = new double[4];
+		int nodeCount = 1;
+		int[] edges = new int[64];
+		int edgeCount = 0;
+
+		// any way out of the start can begin the route.
+		expand(state, start, -1, 0);
+
+		while (!fringe.isEmpty() && fringe.peekKey() <= budget) {
+			int way = fringe.poll();
+			state.close(way);
+			double costToNode = state.getCost(way);
+			if (edgeCount == edges.length)
+				edges = Arrays.copyOf(edges, edgeCount * 2);
+			edges[edgeCount++] = way % graph.edgeCount;
+			int node = arrival(way);
+			if (!settled.isClosed(node)) {
+				settled.close(node);
+				if (nodeCount == nodes.length) {
+					nodes = Arrays.copyOf(nodes, nodeCount * 2);
+					nodeCosts = Arrays.copyOf(nodeCosts, nodeCount * 2);
+				}
+				nodes[nodeCount] = node;
+				nodeCosts[nodeCount++] = costToNode;
+			}
+			expand(state, node, way, costToNode);
+		}
+
+		return new ServiceArea(graph, start, budget, Arrays.copyOf(nodes,
+				nodeCount), Arrays.copyOf(nodeCosts, nodeCount),
+				Arrays.copyOf(edges, edgeCount));
+	}
+
+	/**
+	 * Queues the ways on from the node, arriving along the given way (or -1
+	 * at the start), as EdgeAStar does.
+	 */
+	private void expand(SearchState state, int node, int from,
+			double costToNode) {
+		boolean restricted = from >= 0 && from < graph.edgeCount
+				&& restrictions.isRestricted(from);
+		int passes = travelMode.goesAgainstOneWay() ? 2 : 1;
+		for (int pass = 0; pass < passes; pass++) {
+			boolean along = pass == 0;
+			int[] offsets = along ? graph.offsets : graph.reverseOffsets;
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int e = along ? i : graph.reverseEdges[i];
+				int way = along ? e : graph.edgeCount + e;
+				if (state.isClosed(way) || !allowed(e, along)
+						|| (along && restricted && restrictions.isForbidden(
+								from, e)))
+					continue;
+				double cost = costToNode + costs[e];
+				if (cost < state.getCost(way)) {
+					state.reach(way, cost, from);
+					state.fringe.offer(way, cost);
+				}
+			}
+		}
+	}
+
+	/** whether the mode may go along (or against) the edge */
+	private boolean allowed(int e, boolean along) {
+		return along ? travelMode.allows(graph.edgeAccess[e]) : travelMode
+				.allowsAgainst(graph.edgeAccess[e]);
+	}
+
+	/** the node a way along an edge ends at; see EdgeAStar */
+	private int arrival(int way) {
+		return way < graph.edgeCount ? graph.targets[way]
+				: graph.sources[way - graph.edgeCount];
+	}
+}
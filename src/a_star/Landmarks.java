@@ -0,0 +1,239 @@
+package a_star;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import model.CompactGraph;
+
+/**
+ * Landmarks for ALT (A*, landmarks and the triangle inequality). A handful of
+ * nodes out towards the edges of the map are picked as landmarks, and the road
+ * distance from every landmark to every node, and from every node back to
+ * every landmark, is worked out once up front. Then for any landmark L,
+ *
+ * d(v, goal) >= d(L, goal) - d(L, v) and d(v, goal) >= d(v, L) - d(goal, L)
+ *
+ * and the largest of these over all landmarks is a lower bound on the
+ * distance left from v. Unlike the straight line, it knows about the roads:
+ * when the only way across is round the harbour, the landmarks beyond the
+ * far side of it say so.
+ *
+ * Landmarks are chosen by farthest selection: each new landmark is the node
+ * furthest by road from the closest landmark chosen so far, out of the nodes
+ * with roads both to and from the middle of the map. The distances are
+ * found with full Dijkstra searches, the backward ones running on a pool of
+ * threads while the forward search for the next landmark is picking it.
+ *
+ * The searches use every edge, whatever it's for, but only the way it runs.
+ * Leaving edges out can only make routes longer, so the bounds still hold
+ * for any TravelMode that keeps to one-way roads; they don't for the modes
+ * that can go against them (see SearchMode.ALT).
+ */
+public class Landmarks {
+
+	public static final int DEFAULT_COUNT = 8;
+
+	private final CompactGraph graph;
+	private final Weighting weighting;
+	private final double[] costs;
+	private final int count;
+	private final int[] landmarks;
+
+	// distances to and from the landmarks, node by node, so that all the
+	// landmarks for one node sit together: fromLandmark[v * count + i] is the
+	// distance from landmark i to node v, toLandmark[v * count + i] from v to
+	// landmark i. Infinite where there's no path.
+	private final double[] fromLandmark, toLandmark;
+
+	public Landmarks(CompactGraph graph) {
+		this(graph, Weighting.DISTANCE);
+	}
+
+	public Landmarks(CompactGraph graph, Weighting weighting) {
+		this(graph, weighting, DEFAULT_COUNT, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Picks the given number of landmarks (or one per node, on a tiny graph),
+	 * using up to the given number of threads for the searches, which measure
+	 * "distance" by the given weighting.
+	 */
+	public Landmarks(CompactGraph graph, Weighting weighting, int count,
+			int threads) {
+		if (count < 1)
+			throw new IllegalArgumentException("need at least one landmark");
+		this.graph = graph;
+		this.weighting = weighting;
+		this.costs = weighting.costs(graph);
+		this.count = Math.min(count, graph.nodeCount);
+		this.landmarks = new int[this.count];
+
+		double[][] forward = new double[this.count][];
+		final double[][] backward = new double[this.count][];
+
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(threads, this.count)),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "landmarks");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			// landmarks have to be where every other landmark can get to them
+			// and back, or they only give bounds for a corner of the map; so
+			// they're picked from the nodes that can get to and from the best
+			// connected node. furthest from that node makes the first one.
+			int centre = busiestNode();
+			double[] there = distances(centre, false);
+			double[] back = distances(centre, true);
+
+			// the distance to each candidate from the closest landmark so
+			// far, or -1 if it can't be a landmark.
+			double[] closest = new double[graph.nodeCount];
+			for (int n = 0; n < graph.nodeCount; n++)
+				closest[n] = back[n] == Double.POSITIVE_INFINITY ? -1
+						: there[n];
+			int next = furthest(closest);
+
+			for (int i = 0; i < this.count; i++) {
+				final int landmark = next;
+				final int index = i;
+				landmarks[i] = landmark;
+				futures.add(pool.submit(new Runnable() {
+					public void run() {
+						backward[index] = distances(landmark, true);
+					}
+				}));
+
+				forward[i] = distances(landmark, false);
+				for (int n = 0; n < graph.nodeCount; n++)
+					if (closest[n] >= 0)
+						closest[n] = Math.min(closest[n], forward[i][n]);
+				next = furthest(closest);
+			}
+
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("landmark selection was interrupted.");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("landmark selection failed.",
+					e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		fromLandmark = interleave(forward);
+		toLandmark = interleave(backward);
+	}
+
+	/**
+	 * Returns a lower bound on the road distance from one node to another.
+	 */
+	public double estimate(int from, int to) {
+		double bound = 0;
+		int a = from * count, b = to * count;
+		for (int i = 0; i < count; i++) {
+			// the differences are NaN or infinite when a landmark can't reach
+			// (or be reached from) one of the nodes, and tell us nothing.
+			double viaAfter = toLandmark[a + i] - toLandmark[b + i];
+			if (viaAfter > bound && viaAfter != Double.POSITIVE_INFINITY)
+				bound = viaAfter;
+			double viaBefore = fromLandmark[b + i] - fromLandmark[a + i];
+			if (viaBefore > bound && viaBefore != Double.POSITIVE_INFINITY)
+				bound = viaBefore;
+		}
+		return bound;
+	}
+
+	public Weighting getWeighting() {
+		return weighting;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the index of the i'th landmark.
+	 */
+	public int getLandmark(int i) {
+		return landmarks[i];
+	}
+
+	/**
+	 * Returns the road distance from the start to every node, or from every
+	 * node to the start if going backward over the reverse edges.
+	 */
+	private double[] distances(int start, boolean backward) {
+		double[] cost = new double[graph.nodeCount];
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		IndexedHeap fringe = new IndexedHeap(graph.nodeCount);
+		cost[start] = 0;
+		fringe.offer(start, 0);
+
+		while (!fringe.isEmpty()) {
+			int node = fringe.poll();
+			int[] offsets = backward ? graph.reverseOffsets : graph.offsets;
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int e = backward ? graph.reverseEdges[i] : i;
+				int neighbour = backward ? graph.sources[e] : graph.targets[e];
+				double next = cost[node] + costs[e];
+				if (next < cost[neighbour]) {
+					cost[neighbour] = next;
+					fringe.offer(neighbour, next);
+				}
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Returns the node with the largest finite (non-negative) distance, or the
+	 * lowest index of those on a tie.
+	 */
+	private static int furthest(double[] distances) {
+		int best = 0;
+		double bestDistance = -1;
+		for (int n = 0; n < distances.length; n++) {
+			if (distances[n] > bestDistance
+					&& distances[n] != Double.POSITIVE_INFINITY) {
+				best = n;
+				bestDistance = distances[n];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The node with the most edges, which is sure to be in the main part of
+	 * the map rather than some little disconnected piece.
+	 */
+	private int busiestNode() {
+		int busiest = 0;
+		for (int n = 1; n < graph.nodeCount; n++)
+			if (graph.offsets[n + 1] - graph.offsets[n]
+					> graph.offsets[busiest + 1] - graph.offsets[busiest])
+				busiest = n;
+		return busiest;
+	}
+
+	private double[] interleave(double[][] columns) {
+		double[] rows = new double[graph.nodeCount * count];
+		for (int i = 0; i < count; i++)
+			for (int n = 0; n < graph.nodeCount; n++)
+				rows[n * count + i] = columns[i][n];
+		return rows;
+	}
+}
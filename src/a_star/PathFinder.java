@@ -0,0 +1,14 @@
+package a_star;
+
+/**
+ * Something that finds routes between nodes of a CompactGraph, given by their
+ * dense indices. Implementations must be safe to share between threads.
+ */
+public interface PathFinder {
+
+	/**
+	 * Finds the shortest route from start to goal, or returns null if the goal
+	 * can't be reached.
+	 */
+	public Route search(int start, int goal);
+}
@@ -0,0 +1,38 @@
+package a_star;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CompactGraph;
+import model.Segment;
+
+/**
+ * The result of a route search: the edges of the path from start to goal (as
+ * CompactGraph edge indices), its total cost, and how many nodes the search
+ * settled on the way, which is a fair measure of how much work it did.
+ * Walking and cycling routes can go along one-way edges backwards, so follow
+ * the edges by the ends they share (CompactGraph.otherEnd).
+ */
+public class Route {
+
+	public final int[] edges;
+	public final double cost;
+	public final int settled;
+
+	public Route(int[] edges, double cost, int settled) {
+		this.edges = edges;
+		this.cost = cost;
+		this.settled = settled;
+	}
+
+	/**
+	 * Returns the path as the Segments the rest of the program draws and
+	 * describes.
+	 */
+	public List<Segment> toSegments(CompactGraph graph) {
+		List<Segment> path = new ArrayList<Segment>(edges.length);
+		for (int e : edges)
+			path.add(graph.edges[e]);
+		return path;
+	}
+}
@@ -0,0 +1,125 @@
+package a_star;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.CompactGraph;
+
+/**
+ * A bounded cache of routes, keyed by start and goal node ID and the cost
+ * mode (whatever else decides which route is best, such as the weighting).
+ * Routes are kept as they come from the search, as arrays of edge indices,
+ * and when the cache is full the least recently used one is evicted. A hit
+ * hands out a copy of the route, with nothing settled.
+ *
+ * It's safe to share between threads, though two threads missing on the same
+ * route at once will both search for it. Put it in front of a search with
+ * cached, which gives a PathFinder that looks in the cache before searching.
+ * Routes refer to edges of one particular graph, so clear the cache whenever
+ * a different graph is loaded.
+ */
+public class RouteCache {
+
+	// stands in for "there's no route", as the map can't tell a null value
+	// from a missing one.
+	private static final Route NO_ROUTE = new Route(new int[0], -1, 0);
+
+	private final Map<Key, Route> routes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public RouteCache(final int capacity) {
+		// access order makes iteration (and so eviction) least recent first.
+		routes = new LinkedHashMap<Key, Route>(capacity * 4 / 3 + 1, 0.75f,
+				true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns a PathFinder that answers from the cache when it can, and
+	 * otherwise runs the engine and caches what it finds. Every search the
+	 * engine does must use the given cost mode.
+	 */
+	public PathFinder cached(final CompactGraph graph, final PathFinder engine,
+			final int costMode) {
+		return new PathFinder() {
+			public Route search(int start, int goal) {
+				Key key = new Key(graph.nodes[start].nodeID,
+						graph.nodes[goal].nodeID, costMode);
+				Route route = get(key);
+				if (route != null) {
+					hits.incrementAndGet();
+					if (route == NO_ROUTE)
+						return null;
+					// a copy, so a caller changing its edges can't spoil the
+					// cached one; nothing was settled to find it.
+					return new Route(route.edges.clone(), route.cost, 0);
+				}
+				misses.incrementAndGet();
+				route = engine.search(start, goal);
+				// kept as a copy too, for the same reason.
+				put(key, route == null ? NO_ROUTE : new Route(route.edges
+						.clone(), route.cost, route.settled));
+				return route;
+			}
+		};
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public synchronized int size() {
+		return routes.size();
+	}
+
+	/**
+	 * Throws away every route, and resets the counters.
+	 */
+	public synchronized void clear() {
+		routes.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+
+	private synchronized Route get(Key key) {
+		return routes.get(key);
+	}
+
+	private synchronized void put(Key key, Route route) {
+		routes.put(key, route);
+	}
+
+	private static final class Key {
+		final int startID, goalID, costMode;
+
+		Key(int startID, int goalID, int costMode) {
+			this.startID = startID;
+			this.goalID = goalID;
+			this.costMode = costMode;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return startID == other.startID && goalID == other.goalID
+					&& costMode == other.costMode;
+		}
+
+		@Override
+		public int hashCode() {
+			return (startID * 31 + goalID) * 31 + costMode;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package a_star;
+
+import java.io.File;
+
+import contraction_hierarchies.ContractionHierarchy;
+import model.CompactGraph;
+import model.TravelMode;
+
+/**
+ * The route search algorithms to choose from. Only TURN_RESTRICTED knows
+ * about turn restrictions; the others can route through forbidden turns.
+ */
+public enum SearchMode {
+	/** A* forwards from the start */
+	ASTAR,
+	/** A* from both ends at once, meeting in the middle */
+	BIDIRECTIONAL,
+	/**
+	 * a contraction hierarchy, built (or loaded) once up front. It's built for
+	 * distance over every road, so other weightings and travel modes fall
+	 * back to A*.
+	 */
+	CONTRACTION_HIERARCHIES,
+	/**
+	 * A* with landmark distances as well as straight lines. The landmark
+	 * distances keep to one-way roads, so modes that can go against them
+	 * fall back to A*.
+	 */
+	ALT,
+	/** A* over edges, never taking a forbidden turn */
+	TURN_RESTRICTED;
+
+	public PathFinder create(CompactGraph graph, File directory) {
+		return create(graph, directory, Weighting.DISTANCE, TravelMode.ANY);
+	}
+
+	/**
+	 * Makes the search for the graph, minimising the given weighting for the
+	 * given mode of travel. Modes with preprocessing save it in the given
+	 * directory (if it isn't null) and reuse it from there.
+	 */
+	public PathFinder create(CompactGraph graph, File directory,
+			Weighting weighting, TravelMode travelMode) {
+		switch (this) {
+		case BIDIRECTIONAL:
+			return new BidirectionalAStar(graph, weighting, travelMode);
+		case TURN_RESTRICTED:
+			return new EdgeAStar(graph, weighting, travelMode);
+		case ALT:
+			if (travelMode.goesAgainstOneWay())
+				return new AStar(graph, null, weighting, travelMode);
+			return new AStar(graph, new Landmarks(graph, weighting), weighting,
+					travelMode);
+		case CONTRACTION_HIERARCHIES:
+			if (weighting == Weighting.DISTANCE
+					&& travelMode == TravelMode.ANY)
+				return ContractionHierarchy.loadOrBuild(graph, directory);
+			return new AStar(graph, null, weighting, travelMode);
+		default:
+			return new AStar(graph, null, weighting, travelMode);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package a_star;
+
+import java.util.Arrays;
+
+/**
+ * The working arrays for one search over a graph of a fixed number of nodes:
+ * the best cost found to each node, the edge it was reached by, and whether
+ * it's been closed, plus the fringe. They're allocated once and reused by
+ * every search run on the same thread.
+ *
+ * Instead of clearing the arrays between searches, each search gets a new
+ * generation number, and a node's entries only count if they were stamped
+ * with the current generation. Resetting is then O(1) (plus emptying whatever
+ * was left on the fringe).
+ */
+public class SearchState {
+
+	private final double[] cost;
+	private final int[] edgeFrom;
+	// the generation in which each node was last reached, and closed.
+	private final int[] reached;
+	private final int[] closed;
+	private int generation;
+
+	final IndexedHeap fringe;
+
+	public SearchState(int size) {
+		cost = new double[size];
+		edgeFrom = new int[size];
+		reached = new int[size];
+		closed = new int[size];
+		fringe = new IndexedHeap(size);
+	}
+
+	/**
+	 * Forgets everything from the last search.
+	 */
+	public void reset() {
+		fringe.clear();
+		if (++generation == Integer.MAX_VALUE) {
+			// wrapped around; do the clearing for real, once in a blue moon.
+			Arrays.fill(reached, 0);
+			Arrays.fill(closed, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Returns the fringe, for searches outside this package to drive.
+	 */
+	public IndexedHeap getFringe() {
+		return fringe;
+	}
+
+	public boolean isReached(int node) {
+		return reached[node] == generation;
+	}
+
+	public boolean isClosed(int node) {
+		return closed[node] == generation;
+	}
+
+	/**
+	 * Returns the best cost found to the node this search, or infinity if it
+	 * hasn't been reached.
+	 */
+	public double getCost(int node) {
+		return reached[node] == generation ? cost[node]
+				: Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns the edge the node was reached by, or -1 for the start.
+	 */
+	public int getEdgeFrom(int node) {
+		return edgeFrom[node];
+	}
+
+	public void reach(int node, double costToHere, int edge) {
+		reached[node] = generation;
+		cost[node] = costToHere;
+		edgeFrom[node] = edge;
+	}
+
+	public void close(int node) {
+		closed[node] = generation;
+	}
+}
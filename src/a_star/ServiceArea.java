@@ -0,0 +1,76 @@
+package a_star;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CompactGraph;
+import model.Node;
+import model.Segment;
+
+/**
+ * What an Isochrone search found: the nodes reachable within the budget, in
+ * the order they were reached along with the cost to each, and the segments
+ * that lie entirely within the budget.
+ */
+public class ServiceArea {
+
+	private final CompactGraph graph;
+	private final int start;
+	private final double budget;
+	private final int[] nodes;
+	private final double[] costs;
+	private final int[] edges;
+
+	ServiceArea(CompactGraph graph, int start, double budget, int[] nodes,
+			double[] costs, int[] edges) {
+		this.graph = graph;
+		this.start = start;
+		this.budget = budget;
+		this.nodes = nodes;
+		this.costs = costs;
+		this.edges = edges;
+	}
+
+	public Node getStart() {
+		return graph.nodes[start];
+	}
+
+	public double getBudget() {
+		return budget;
+	}
+
+	public int getNodeCount() {
+		return nodes.length;
+	}
+
+	/**
+	 * Returns the reachable nodes, nearest first.
+	 */
+	public List<Node> getNodes() {
+		List<Node> list = new ArrayList<Node>(nodes.length);
+		for (int node : nodes)
+			list.add(graph.nodes[node]);
+		return list;
+	}
+
+	/**
+	 * Returns the cost of getting to the i'th node in getNodes.
+	 */
+	public double getCost(int i) {
+		return costs[i];
+	}
+
+	public List<Segment> getSegments() {
+		List<Segment> list = new ArrayList<Segment>(edges.length);
+		for (int e : edges)
+			list.add(graph.edges[e]);
+		return list;
+	}
+
+	/**
+	 * Returns the node indices, in the same order as getNodes.
+	 */
+	public int[] getNodeIndices() {
+		return nodes.clone();
+	}
+}
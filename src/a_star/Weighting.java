@@ -0,0 +1,59 @@
+package a_star;
+
+import model.CompactGraph;
+import model.Road;
+import model.TravelMode;
+
+/**
+ * What a route search minimises: the length of the route, or the time it
+ * takes at the speed limits, or at the travel mode's own pace where that's
+ * slower.
+ */
+public enum Weighting {
+	/** shortest routes, with costs in km */
+	DISTANCE,
+	/** fastest routes, with costs in hours */
+	TIME;
+
+	/**
+	 * Returns the cost of every edge in the graph, driving.
+	 */
+	public double[] costs(CompactGraph graph) {
+		return costs(graph, TravelMode.ANY);
+	}
+
+	/**
+	 * Returns the cost of every edge in the graph for the given mode.
+	 */
+	public double[] costs(CompactGraph graph, TravelMode mode) {
+		if (this == DISTANCE)
+			return graph.lengths;
+		if (mode.speed == Double.POSITIVE_INFINITY)
+			return graph.times;
+		double[] times = new double[graph.edgeCount];
+		for (int e = 0; e < graph.edgeCount; e++)
+			times[e] = graph.lengths[e]
+					/ mode.speedOn(Road.speedLimit(graph.edgeSpeeds[e]));
+		return times;
+	}
+
+	/**
+	 * Returns a lower bound on the cost of getting from one node to another,
+	 * driving, for use as an A* heuristic.
+	 */
+	public double estimate(CompactGraph graph, int from, int to) {
+		return estimate(graph, TravelMode.ANY, from, to);
+	}
+
+	/**
+	 * Returns a lower bound on the cost of getting from one node to another
+	 * for the given mode, for use as an A* heuristic. For time, that's the
+	 * distance bound covered at the fastest the mode goes anywhere.
+	 */
+	public double estimate(CompactGraph graph, TravelMode mode, int from,
+			int to) {
+		double distance = graph.estimate(from, to);
+		return this == TIME ? distance / mode.speedOn(graph.maxSpeed)
+				: distance;
+	}
+}
@@ -1,201 +1,147 @@
 package articulation_points;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
+import model.CompactGraph;
 import model.Node;
 
+/**
+ * Finds the articulation points of the road graph (treated as undirected):
+ * the nodes whose removal would cut some part of the map off from the rest.
+ *
+ * This is Hopcroft and Tarjan's depth first search, run iteratively over the
+ * CompactGraph's neighbour arrays with an explicit int stack, so it takes
+ * O(V + E) time and never recurses, however long the roads. All the per-node
+ * state lives in int arrays indexed by node: its depth in the search tree
+ * (0 if it hasn't been visited), its reach back (the shallowest depth its
+ * subtree has an edge back to), its parent, and how far through its
+ * neighbours the search has got.
+ */
 public class ArtPointSearch {
 
-	boolean iterative = true;
-
-	private Set<Node> articulationPoints;
-	private List<DepthNode> unvisitedNodes;
-	private Map<Node, DepthNode> depthNodeMap;
-
-	public ArtPointSearch(Map<Integer, Node> nodeMap) {
-		this.articulationPoints = new HashSet<Node>();
-		this.unvisitedNodes = new ArrayList<DepthNode>();
-		this.depthNodeMap = new HashMap<Node, DepthNode>();
-
-		// construct the data structures for every node
-		for (Node n : nodeMap.values()) {
-			DepthNode artPoint = new DepthNode(n);
-			// set each node with its own fresh art point
-			depthNodeMap.put(n, artPoint);
-			// list of unvisited nodes
-			unvisitedNodes.add(artPoint);
-			if (iterative)
-				n.setDepth(Integer.MAX_VALUE);
-		}
-		// find all art points
-		search();
+	private final CompactGraph graph;
+	// the search tree, kept for BiconnectedIndex. order lists the nodes
+	// visited, in the order they were first reached.
+	final int[] depth, reachBack, parent, order;
+	int visited;
+	private final int[] nextNeighbour;
+	private final int[] stack;
+	private final boolean[] articulation;
+	private int count;
+
+	/**
+	 * Finds the articulation points of the whole graph.
+	 */
+	public ArtPointSearch(CompactGraph graph) {
+		this(graph, -1);
 	}
 
-	public ArtPointSearch(Node node) {
-		this.articulationPoints = new HashSet<Node>();
-		this.unvisitedNodes = new ArrayList<DepthNode>();
-		this.depthNodeMap = new HashMap<Node, DepthNode>();
-		Set<Node> graphComponent = new HashSet<Node>();
-		traverse(node, graphComponent);
-		for (Node n : graphComponent) {
-			DepthNode artPoint = new DepthNode(n);
-			depthNodeMap.put(n, artPoint);
-			unvisitedNodes.add(artPoint);
-			if (iterative)
-				n.setDepth(Integer.MAX_VALUE);
+	/**
+	 * Finds the articulation points of the part of the graph connected to
+	 * the given node, or of the whole graph if it's -1.
+	 */
+	public ArtPointSearch(CompactGraph graph, int start) {
+		this.graph = graph;
+		int n = graph.nodeCount;
+		depth = new int[n];
+		reachBack = new int[n];
+		parent = new int[n];
+		order = new int[n];
+		nextNeighbour = new int[n];
+		stack = new int[n];
+		articulation = new boolean[n];
+
+		if (start >= 0) {
+			search(start);
+		} else {
+			for (int root = 0; root < n; root++)
+				if (depth[root] == 0)
+					search(root);
 		}
-		// find components art points
-		search();
 	}
 
-	public void traverse(Node n, Set<Node> visited) {
-		visited.add(n);
-		for (Node neighbour : n.getNeighbourNodes()) {
-			if (!visited.contains(neighbour)) {
-				traverse(neighbour, visited);
-			}
-		}
-	}
-
-	private void search() {
-		// while there are unvisited nodes in the list
-		while (!unvisitedNodes.isEmpty()) {
-			// start at first node in list of unvisited
-			DepthNode start = unvisitedNodes.remove(0);
-			int rootChildren = 0;
-			// recurse subtree of root
-			for (DepthNode neighbour : neighboursOf(start)) {
-				// if there is still unvisited nodes after first traversal or
-				// rootChildren > 1 then root is art.pt
-				if (neighbour.getDepth() == Integer.MAX_VALUE) {
-					if (iterative) {
-						iterArtPts(neighbour.getNode(), start.getNode());
-					} else {
-						recArtPts(neighbour, 1, start);
-					}
-					rootChildren++;
+	/**
+	 * Searches the component containing the root.
+	 */
+	private void search(int root) {
+		int[] offsets = graph.neighbourOffsets;
+		int[] neighbours = graph.neighbours;
+
+		int top = 0;
+		stack[top++] = root;
+		order[visited++] = root;
+		depth[root] = reachBack[root] = 1;
+		parent[root] = -1;
+		nextNeighbour[root] = offsets[root];
+		int rootChildren = 0;
+
+		while (top > 0) {
+			int node = stack[top - 1];
+			if (nextNeighbour[node] < offsets[node + 1]) {
+				int neighbour = neighbours[nextNeighbour[node]++];
+				if (neighbour == node || neighbour == parent[node])
+					continue;
+				if (depth[neighbour] == 0) {
+					// a new child; go down into it.
+					depth[neighbour] = reachBack[neighbour] = depth[node] + 1;
+					parent[neighbour] = node;
+					nextNeighbour[neighbour] = offsets[neighbour];
+					stack[top++] = neighbour;
+					order[visited++] = neighbour;
+					if (node == root)
+						rootChildren++;
+				} else {
+					// an edge back up the tree.
+					reachBack[node] = Math.min(reachBack[node],
+							depth[neighbour]);
 				}
-			}
-			if (rootChildren > 1) {
-				// if the root has more than one child add it as art
-				articulationPoints.add(start.getNode());
-			}
-		}
-	}
-
-	private int recArtPts(DepthNode node, int depth, DepthNode fromNode) {
-		unvisitedNodes.remove(node); // record that this node was visited
-		node.setDepth(depth);
-		node.setReachBack(depth);
-		// recurse neighbours excluding where the node it came from
-		Set<DepthNode> neighbours = neighboursOf(node);
-
-		// remove fromNode from neighbours so it can't go back up the graph.
-		neighbours.remove(fromNode);
-
-		for (DepthNode neigh : neighbours) {
-			// if it has already been visited
-			if (neigh.getDepth() < Integer.MAX_VALUE) {
-				node.setReachBack(Math.min(neigh.getDepth(),
-						node.getReachBack()));
-				// else isn't visited
 			} else {
-				int childReach = recArtPts(neigh, depth + 1, node);
-				node.setReachBack(Math.min(childReach, node.getReachBack()));
-				/**
-				 * once visited if child has no reach higher than current node
-				 * it is articulation point
-				 */
-				if (childReach >= node.getDepth()) {
-					articulationPoints.add(node.getNode());
+				// done with this node; report back to its parent, which is an
+				// articulation point if the subtree can't reach above it.
+				top--;
+				int up = parent[node];
+				if (up >= 0) {
+					reachBack[up] = Math.min(reachBack[up], reachBack[node]);
+					if (up != root && reachBack[node] >= depth[up])
+						mark(up);
 				}
 			}
 		}
-		return node.getReachBack();
+
+		// the root is only an articulation point if it has several subtrees.
+		if (rootChildren > 1)
+			mark(root);
 	}
 
-	private void iterArtPts(Node firstNode, Node root) {
-		// initialise stack and push first node
-		Stack<IterativeNode> stack = new Stack<IterativeNode>();
-		stack.push(new IterativeNode(firstNode, 1, new IterativeNode(root, 0,
-				null)));
-		while (!stack.isEmpty()) {
-			// peek at the top element, get its node and mark it as visited
-			IterativeNode elem = stack.peek();
-			Node node = elem.getNode();
-			unvisitedNodes.remove(depthNodeMap.get(node));
-			// if this node has not been visited
-			if (elem.getChildren() == null) {
-				// save the nodes depth and reachback
-				node.setDepth(elem.getDepth());
-				elem.setReachBack(elem.getDepth());
-				// create the nodes children as a new linkedList
-				elem.setChildren(new LinkedList<Node>());
-				for (Node neigh : node.getNeighbourNodes()) {
-					if (neigh != elem.getParent().getNode()) {
-						elem.addChild(neigh);
-					}
-				}
-			}
-			// if the element has been visited and has children
-			else if (!elem.getChildren().isEmpty()) {
-				// poll child
-				Node child = elem.getChildren().poll();
-				// if the child has been visited, update its reachback
-				if (child.getDepth() < Integer.MAX_VALUE) {
-					elem.setReachBack(Math.min(elem.getReachBack(),
-							child.getDepth()));
-				}
-				// otherwise put it on the stack with depth one greater than its
-				// parent
-				else {
-					stack.push(new IterativeNode(child, node.getDepth() + 1,
-							elem));
-				}
-			}
-			// if the node has been visited but has ZERO children
-			else {
-				/**
-				 * if this isnt the first node and this node has a reachback
-				 * less than its parents depth and this nodes parent is not the
-				 * root then this nodes parent is an articulation point
-				 */
-				if (node != firstNode) {
-					if (elem.getReachBack() >= elem.getParent().getDepth()
-							&& elem.getParent() != null) {
-						articulationPoints.add(elem.getParent().getNode());
-					}
-					elem.getParent().setReachBack(
-							Math.min(elem.getParent().getReachBack(),
-									elem.getReachBack()));
-				}
-				// remove the element from the stack
-				stack.pop();
-			}
+	private void mark(int node) {
+		if (!articulation[node]) {
+			articulation[node] = true;
+			count++;
 		}
 	}
 
-	private Set<DepthNode> neighboursOf(DepthNode n) {
-		// get all neighbour nodes current node
-		Set<Node> neighbourNodes = n.getNeighbours();
-		// create a set of depth nodes
-		Set<DepthNode> neighbourDepthNodes = new HashSet<DepthNode>();
-		// Iterate set of neighbour nodes getting the depth nodes
-		for (Node node : neighbourNodes) {
-			neighbourDepthNodes.add(depthNodeMap.get(node));
-		}
-		// return a set of neighbour depth nodes
-		return neighbourDepthNodes;
+	public boolean isArticulation(int node) {
+		return articulation[node];
+	}
+
+	/**
+	 * Returns the node indices of the articulation points, in order.
+	 */
+	public int[] getArticulationIndices() {
+		int[] indices = new int[count];
+		int i = 0;
+		for (int node = 0; node < articulation.length; node++)
+			if (articulation[node])
+				indices[i++] = node;
+		return indices;
 	}
 
 	public Set<Node> getArticulations() {
-		return articulationPoints;
+		Set<Node> points = new HashSet<Node>(count * 4 / 3 + 1);
+		for (int node = 0; node < articulation.length; node++)
+			if (articulation[node])
+				points.add(graph.nodes[node]);
+		return points;
 	}
 }
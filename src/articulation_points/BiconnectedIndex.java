@@ -0,0 +1,172 @@
+package articulation_points;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import model.CompactGraph;
+import model.Node;
+
+/**
+ * An index of how the road graph (treated as undirected) hangs together,
+ * built once from a whole-graph ArtPointSearch so that questions about it
+ * don't need another search:
+ *
+ * - the connected component each node is in, and the articulation points of
+ * each component, so "the articulation points of the component containing
+ * this node" is a lookup, costing only the size of the answer;
+ *
+ * - the bridges, links whose loss would cut the graph in two, so checking a
+ * route for them costs O(1) per edge;
+ *
+ * - the biconnected components (blocks) and which blocks each node is in,
+ * which with the articulation points is the block-cut tree.
+ *
+ * All of these come straight from the search tree. Going through the nodes
+ * in the order the search reached them, a node starts a new component if it
+ * has no parent, and otherwise starts a new block if its subtree can't reach
+ * above its parent, or else is in its parent's block. The link up to its
+ * parent is a bridge if the subtree can't even reach the parent.
+ *
+ * Links are between neighbouring nodes, so two segments joining the same
+ * pair of nodes count as one link.
+ */
+public class BiconnectedIndex {
+
+	private final CompactGraph graph;
+	private final ArtPointSearch search;
+
+	private final int[] component;
+	// the articulation points of component c are artPoints[artOffsets[c]] up
+	// to artPoints[artOffsets[c + 1] - 1].
+	private final int[] artOffsets, artPoints;
+
+	// the block containing the link from each node up to its parent, or -1
+	// for a root, and whether that link is a bridge.
+	private final int[] block;
+	private final boolean[] bridgeUp;
+	private final int blockCount;
+
+	public BiconnectedIndex(CompactGraph graph) {
+		this.graph = graph;
+		this.search = new ArtPointSearch(graph);
+		int n = graph.nodeCount;
+
+		component = new int[n];
+		block = new int[n];
+		bridgeUp = new boolean[n];
+		int components = 0, blocks = 0;
+		for (int i = 0; i < search.visited; i++) {
+			int node = search.order[i];
+			int up = search.parent[node];
+			if (up < 0) {
+				component[node] = components++;
+				block[node] = -1;
+				continue;
+			}
+			component[node] = component[up];
+			if (search.reachBack[node] >= search.depth[up] || block[up] < 0)
+				block[node] = blocks++;
+			else
+				block[node] = block[up];
+			bridgeUp[node] = search.reachBack[node] > search.depth[up];
+		}
+		blockCount = blocks;
+
+		// group the articulation points by component.
+		artOffsets = new int[components + 1];
+		int[] points = search.getArticulationIndices();
+		for (int point : points)
+			artOffsets[component[point] + 1]++;
+		for (int c = 0; c < components; c++)
+			artOffsets[c + 1] += artOffsets[c];
+		artPoints = new int[points.length];
+		int[] fill = Arrays.copyOf(artOffsets, components);
+		for (int point : points)
+			artPoints[fill[component[point]]++] = point;
+	}
+
+	public boolean isArticulation(int node) {
+		return search.isArticulation(node);
+	}
+
+	/**
+	 * Returns the articulation points of the whole graph.
+	 */
+	public Set<Node> getArticulations() {
+		return search.getArticulations();
+	}
+
+	/**
+	 * Returns the articulation points of the component the node is in.
+	 */
+	public Set<Node> getArticulations(int node) {
+		int c = component[node];
+		int size = artOffsets[c + 1] - artOffsets[c];
+		Set<Node> points = new HashSet<Node>(size * 4 / 3 + 1);
+		for (int i = artOffsets[c]; i < artOffsets[c + 1]; i++)
+			points.add(graph.nodes[artPoints[i]]);
+		return points;
+	}
+
+	public int getComponent(int node) {
+		return component[node];
+	}
+
+	public int getComponentCount() {
+		return artOffsets.length - 1;
+	}
+
+	/**
+	 * Returns true if the two nodes are neighbours and the link between them
+	 * is a bridge.
+	 */
+	public boolean isBridge(int a, int b) {
+		return (search.parent[b] == a && bridgeUp[b])
+				|| (search.parent[a] == b && bridgeUp[a]);
+	}
+
+	/**
+	 * Returns the edges of the route (as CompactGraph edge indices) that
+	 * cross a bridge, in order.
+	 */
+	public int[] bridgesOn(int[] edges) {
+		int count = 0;
+		int[] bridges = new int[edges.length];
+		for (int e : edges)
+			if (isBridge(graph.sources[e], graph.targets[e]))
+				bridges[count++] = e;
+		return Arrays.copyOf(bridges, count);
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * Returns the blocks the node is in: one for most nodes, several for an
+	 * articulation point, and none for a node on its own.
+	 */
+	public int[] getBlocks(int node) {
+		int[] offsets = graph.neighbourOffsets;
+		int[] blocks = new int[offsets[node + 1] - offsets[node] + 1];
+		int count = 0;
+		if (block[node] >= 0)
+			blocks[count++] = block[node];
+		// the blocks started by its children in the search tree.
+		for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+			int child = graph.neighbours[i];
+			if (search.parent[child] == node && child != node
+					&& !contains(blocks, count, block[child]))
+				blocks[count++] = block[child];
+		}
+		return Arrays.copyOf(blocks, count);
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for (int i = 0; i < count; i++)
+			if (values[i] == value)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,418 @@
+package contraction_hierarchies;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import a_star.IndexedHeap;
+import a_star.PathFinder;
+import a_star.Route;
+import a_star.SearchState;
+import model.CompactGraph;
+
+/**
+ * A contraction hierarchy over a CompactGraph: every node has a rank, and
+ * there are extra shortcut edges, so that every shortest path can be found
+ * going only "upwards" in rank from both ends. A query is then a
+ * bidirectional Dijkstra search where the forward search only follows edges
+ * up from the start, and the backward search only follows edges (backwards)
+ * up from the goal. Both searches stay in a small part of the graph, so
+ * queries take microseconds rather than milliseconds.
+ *
+ * Each shortcut remembers the two edges it stands for, so a route through
+ * shortcuts is unpacked back into the original CompactGraph edges (and hence
+ * Segments) before it's returned.
+ *
+ * Building a hierarchy (see Contractor) is slow, so it can be saved next to
+ * the data files and loaded back next time, as long as it was built from the
+ * same graph. The file carries a CRC32 of everything after its header, and
+ * what's read back is checked to make sense for the graph before it's used;
+ * a file that fails either check is treated as not being there.
+ */
+public class ContractionHierarchy implements PathFinder {
+
+	public static final String HIERARCHY_FILENAME = "contraction.hierarchy";
+
+	private static final int MAGIC = 0x414b4348; // "AKCH"
+	private static final int VERSION = 2;
+
+	// magic, version, fingerprint, node count, edge count, crc.
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8;
+	private static final int CHECKSUM_OFFSET = HEADER_SIZE - 8;
+
+	private final CompactGraph graph;
+	private final int nodeCount;
+	private final int[] rank;
+
+	// all the edges, originals (numbered as in the CompactGraph) then
+	// shortcuts. first and second are the edges a shortcut replaces, or -1.
+	private final int[] from, to, first, second;
+	private final double[] weight;
+
+	// edges going up in rank, by the node they leave...
+	private final int[] upOffsets, upEdges;
+	// ...and edges coming down in rank, by the node they enter.
+	private final int[] downOffsets, downEdges;
+
+	private final ThreadLocal<SearchState[]> states = new ThreadLocal<SearchState[]>() {
+		@Override
+		protected SearchState[] initialValue() {
+			return new SearchState[] { new SearchState(nodeCount),
+					new SearchState(nodeCount) };
+		}
+	};
+
+	ContractionHierarchy(CompactGraph graph, int[] rank, int[] from, int[] to,
+			double[] weight, int[] first, int[] second) {
+		this.graph = graph;
+		this.nodeCount = graph.nodeCount;
+		this.rank = rank;
+		this.from = from;
+		this.to = to;
+		this.weight = weight;
+		this.first = first;
+		this.second = second;
+
+		// sort the edges into the upward and downward search graphs.
+		upOffsets = new int[nodeCount + 1];
+		downOffsets = new int[nodeCount + 1];
+		for (int e = 0; e < from.length; e++) {
+			if (rank[from[e]] < rank[to[e]])
+				upOffsets[from[e] + 1]++;
+			else
+				downOffsets[to[e] + 1]++;
+		}
+		for (int n = 0; n < nodeCount; n++) {
+			upOffsets[n + 1] += upOffsets[n];
+			downOffsets[n + 1] += downOffsets[n];
+		}
+		upEdges = new int[upOffsets[nodeCount]];
+		downEdges = new int[downOffsets[nodeCount]];
+		int[] upFill = Arrays.copyOf(upOffsets, nodeCount);
+		int[] downFill = Arrays.copyOf(downOffsets, nodeCount);
+		for (int e = 0; e < from.length; e++) {
+			if (rank[from[e]] < rank[to[e]])
+				upEdges[upFill[from[e]]++] = e;
+			else
+				downEdges[downFill[to[e]]++] = e;
+		}
+	}
+
+	/**
+	 * Contracts the graph from scratch.
+	 */
+	public static ContractionHierarchy build(CompactGraph graph) {
+		return new Contractor(graph).contract();
+	}
+
+	/**
+	 * Loads the hierarchy saved in the given directory if it was built from
+	 * this graph, and otherwise builds it and saves it there. A null directory
+	 * means just build it.
+	 */
+	public static ContractionHierarchy loadOrBuild(CompactGraph graph,
+			File directory) {
+		if (directory == null)
+			return build(graph);
+
+		File file = new File(directory, HIERARCHY_FILENAME);
+		ContractionHierarchy hierarchy = read(graph, file);
+		if (hierarchy == null) {
+			hierarchy = build(graph);
+			try {
+				hierarchy.write(file);
+			} catch (IOException e) {
+				// it's only saved to speed up the next start, so carry on.
+			}
+		}
+		return hierarchy;
+	}
+
+	@Override
+	public Route search(int start, int goal) {
+		SearchState[] pair = states.get();
+		SearchState forward = pair[0], backward = pair[1];
+		IndexedHeap forwardFringe = forward.getFringe();
+		IndexedHeap backwardFringe = backward.getFringe();
+		forward.reset();
+		backward.reset();
+
+		forward.reach(start, 0, -1);
+		forwardFringe.offer(start, 0);
+		backward.reach(goal, 0, -1);
+		backwardFringe.offer(goal, 0);
+
+		double best = start == goal ? 0 : Double.POSITIVE_INFINITY;
+		int meeting = start == goal ? start : -1;
+		int settled = 0;
+
+		// unlike plain bidirectional search, neither side can stop at the
+		// first meeting; each carries on until its fringe is past the best.
+		while (true) {
+			boolean forwardDone = forwardFringe.isEmpty()
+					|| forwardFringe.peekKey() >= best;
+			boolean backwardDone = backwardFringe.isEmpty()
+					|| backwardFringe.peekKey() >= best;
+			if (forwardDone && backwardDone)
+				break;
+
+			boolean goForward = backwardDone
+					|| (!forwardDone && forwardFringe.peekKey() <= backwardFringe
+							.peekKey());
+			SearchState side = goForward ? forward : backward;
+			SearchState other = goForward ? backward : forward;
+			int[] offsets = goForward ? upOffsets : downOffsets;
+			int[] edges = goForward ? upEdges : downEdges;
+
+			IndexedHeap fringe = goForward ? forwardFringe : backwardFringe;
+			int node = fringe.poll();
+			side.close(node);
+			settled++;
+			double costToNode = side.getCost(node);
+			for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+				int e = edges[i];
+				int next = goForward ? to[e] : from[e];
+				double cost = costToNode + weight[e];
+				if (cost < side.getCost(next)) {
+					side.reach(next, cost, e);
+					fringe.offer(next, cost);
+					if (other.isReached(next)
+							&& cost + other.getCost(next) < best) {
+						best = cost + other.getCost(next);
+						meeting = next;
+					}
+				}
+			}
+		}
+
+		if (meeting < 0)
+			return null;
+		return new Route(unpackPath(forward, backward, meeting), best,
+				settled);
+	}
+
+	/**
+	 * Returns the rank of the node: the order it was contracted in.
+	 */
+	public int getRank(int node) {
+		return rank[node];
+	}
+
+	/**
+	 * Returns how many shortcut edges the hierarchy added.
+	 */
+	public int getShortcutCount() {
+		return from.length - graph.edgeCount;
+	}
+
+	/**
+	 * Collects the hierarchy edges from the start up to the meeting node and
+	 * down to the goal, and unpacks each into original edges.
+	 */
+	private int[] unpackPath(SearchState forward, SearchState backward,
+			int meeting) {
+		int[] path = new int[16];
+		int length = 0;
+		int[] stack = new int[16];
+
+		// forward edges come out goal-first, so gather them and go backwards.
+		int upCount = 0;
+		for (int e = forward.getEdgeFrom(meeting); e >= 0; e = forward
+				.getEdgeFrom(from[e]))
+			upCount++;
+		int[] up = new int[upCount];
+		for (int e = forward.getEdgeFrom(meeting); e >= 0; e = forward
+				.getEdgeFrom(from[e]))
+			up[--upCount] = e;
+
+		for (int e : up) {
+			stack[0] = e;
+			int size = 1;
+			while (size > 0) {
+				int top = stack[--size];
+				if (first[top] < 0) {
+					if (length == path.length)
+						path = Arrays.copyOf(path, length * 2);
+					path[length++] = top;
+				} else {
+					// push second first, so first comes off the stack first.
+					if (size + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[size++] = second[top];
+					stack[size++] = first[top];
+				}
+			}
+		}
+		for (int e = backward.getEdgeFrom(meeting); e >= 0; e = backward
+				.getEdgeFrom(to[e])) {
+			stack[0] = e;
+			int size = 1;
+			while (size > 0) {
+				int top = stack[--size];
+				if (first[top] < 0) {
+					if (length == path.length)
+						path = Arrays.copyOf(path, length * 2);
+					path[length++] = top;
+				} else {
+					if (size + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[size++] = second[top];
+					stack[size++] = first[top];
+				}
+			}
+		}
+		return Arrays.copyOf(path, length);
+	}
+
+	/**
+	 * Saves the hierarchy, tagged with the fingerprint of its graph. It's
+	 * written to a temporary file first, so a half-written one is never
+	 * picked up.
+	 */
+	public void write(File file) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		long checksum;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(graph.fingerprint());
+			out.writeInt(nodeCount);
+			out.writeInt(from.length);
+			// the checksum is filled in afterwards.
+			out.writeLong(0);
+
+			CheckedOutputStream checked = new CheckedOutputStream(out,
+					new CRC32());
+			DataOutputStream payload = new DataOutputStream(checked);
+			for (int n = 0; n < nodeCount; n++)
+				payload.writeInt(rank[n]);
+			for (int e = 0; e < from.length; e++) {
+				payload.writeInt(from[e]);
+				payload.writeInt(to[e]);
+				payload.writeDouble(weight[e]);
+				payload.writeInt(first[e]);
+				payload.writeInt(second[e]);
+			}
+			payload.flush();
+			checksum = checked.getChecksum().getValue();
+		} finally {
+			out.close();
+		}
+
+		RandomAccessFile patch = new RandomAccessFile(temp, "rw");
+		try {
+			patch.seek(CHECKSUM_OFFSET);
+			patch.writeLong(checksum);
+		} finally {
+			patch.close();
+		}
+		Files.move(temp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Loads a saved hierarchy, or returns null if there isn't one for this
+	 * graph, or it's broken.
+	 */
+	public static ContractionHierarchy read(CompactGraph graph, File file) {
+		if (!file.isFile())
+			return null;
+
+		try {
+			ByteBuffer in = map(file);
+			if (in.getInt() != MAGIC || in.getInt() != VERSION
+					|| in.getLong() != graph.fingerprint()
+					|| in.getInt() != graph.nodeCount)
+				return null;
+
+			int edgeCount = in.getInt();
+			long checksum = in.getLong();
+			if (edgeCount < graph.edgeCount
+					|| in.remaining() != graph.nodeCount * 4L + edgeCount * 24L)
+				return null;
+			CRC32 crc = new CRC32();
+			crc.update(in.duplicate());
+			if (crc.getValue() != checksum)
+				return null;
+
+			int[] rank = new int[graph.nodeCount];
+			for (int n = 0; n < rank.length; n++)
+				rank[n] = in.getInt();
+			int[] from = new int[edgeCount], to = new int[edgeCount];
+			int[] first = new int[edgeCount], second = new int[edgeCount];
+			double[] weight = new double[edgeCount];
+			for (int e = 0; e < edgeCount; e++) {
+				from[e] = in.getInt();
+				to[e] = in.getInt();
+				weight[e] = in.getDouble();
+				first[e] = in.getInt();
+				second[e] = in.getInt();
+			}
+			if (!isValid(graph, rank, from, to, weight, first, second))
+				return null;
+			return new ContractionHierarchy(graph, rank, from, to, weight,
+					first, second);
+		} catch (IOException | BufferUnderflowException e) {
+			// a hierarchy that can't be read is just a missing one.
+			return null;
+		}
+	}
+
+	/**
+	 * Checks what was read makes a hierarchy of this graph: the ranks are
+	 * 0 up to nodeCount - 1 once each, every edge joins two nodes of the
+	 * graph with a non-negative weight, the original edges are the graph's,
+	 * and each shortcut stands for two earlier edges that meet up.
+	 */
+	private static boolean isValid(CompactGraph graph, int[] rank, int[] from,
+			int[] to, double[] weight, int[] first, int[] second) {
+		int n = graph.nodeCount;
+		boolean[] ranked = new boolean[n];
+		for (int node = 0; node < n; node++) {
+			if (rank[node] < 0 || rank[node] >= n || ranked[rank[node]])
+				return false;
+			ranked[rank[node]] = true;
+		}
+		for (int e = 0; e < from.length; e++) {
+			if (from[e] < 0 || from[e] >= n || to[e] < 0 || to[e] >= n
+					|| !(weight[e] >= 0))
+				return false;
+			if (e < graph.edgeCount) {
+				if (from[e] != graph.sources[e] || to[e] != graph.targets[e]
+						|| first[e] != -1 || second[e] != -1)
+					return false;
+			} else if (first[e] < 0 || first[e] >= e || second[e] < 0
+					|| second[e] >= e || from[first[e]] != from[e]
+					|| to[first[e]] != from[second[e]]
+					|| to[second[e]] != to[e]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package contraction_hierarchies;
+
+import java.util.Arrays;
+
+import a_star.IndexedHeap;
+import a_star.SearchState;
+import model.CompactGraph;
+
+/**
+ * Builds a ContractionHierarchy. Nodes are contracted one at a time, least
+ * important first: contracting a node takes it out of the graph, adding a
+ * shortcut edge u -> w for every pair of neighbours whose shortest path went
+ * through it (u -> node -> w), unless a local "witness" search finds another
+ * path that's no longer. The order the nodes came out in is their rank.
+ *
+ * Importance is the usual edge difference (shortcuts added less edges
+ * removed) plus the number of neighbours already contracted, which spreads
+ * the contraction out evenly over the map. Priorities are updated lazily: the
+ * node at the top of the queue is re-evaluated before it's contracted, and
+ * put back if it's no longer the least important, and a contracted node's
+ * neighbours are re-evaluated after it.
+ *
+ * The graph is directed throughout, so one-way roads stay one-way: a shortcut
+ * is only added along the direction its two edges go.
+ */
+class Contractor {
+
+	// how many nodes a witness search may settle before giving up; giving up
+	// early only costs an unnecessary shortcut.
+	private static final int WITNESS_SETTLE_LIMIT = 200;
+
+	private final CompactGraph graph;
+	private final int nodeCount;
+
+	// every edge, originals first (numbered as in the CompactGraph), then
+	// shortcuts, which remember the two edges they replace.
+	private int edgeCount;
+	private int[] from, to, first, second;
+	private double[] weight;
+
+	// the edges out of and into each node, including ones to contracted
+	// nodes, which are skipped.
+	private int[][] out, in;
+	private int[] outSize, inSize;
+
+	private final boolean[] contracted;
+	private final int[] deletedNeighbours;
+	private final SearchState witness;
+
+	Contractor(CompactGraph graph) {
+		this.graph = graph;
+		this.nodeCount = graph.nodeCount;
+
+		int capacity = graph.edgeCount * 2 + 16;
+		from = new int[capacity];
+		to = new int[capacity];
+		first = new int[capacity];
+		second = new int[capacity];
+		weight = new double[capacity];
+
+		out = new int[nodeCount][];
+		in = new int[nodeCount][];
+		outSize = new int[nodeCount];
+		inSize = new int[nodeCount];
+		for (int n = 0; n < nodeCount; n++) {
+			out[n] = new int[Math.max(2, graph.offsets[n + 1]
+					- graph.offsets[n])];
+			in[n] = new int[Math.max(2, graph.reverseOffsets[n + 1]
+					- graph.reverseOffsets[n])];
+		}
+		// every original edge is kept (so the numbering matches), but of
+		// parallel edges only the shortest is linked in for contraction.
+		// edges out of a node are sorted by target, so they're side by side.
+		for (int e = 0; e < graph.edgeCount; e++) {
+			int edge = addEdge(graph.sources[e], graph.targets[e],
+					graph.lengths[e], -1, -1);
+			boolean shortest = true;
+			for (int p = e - 1; p >= graph.offsets[graph.sources[e]]
+					&& graph.targets[p] == graph.targets[e] && shortest; p--)
+				shortest = graph.lengths[p] > graph.lengths[e];
+			for (int p = e + 1; p < graph.offsets[graph.sources[e] + 1]
+					&& graph.targets[p] == graph.targets[e] && shortest; p++)
+				shortest = graph.lengths[p] >= graph.lengths[e];
+			if (shortest)
+				link(edge);
+		}
+
+		contracted = new boolean[nodeCount];
+		deletedNeighbours = new int[nodeCount];
+		witness = new SearchState(nodeCount);
+	}
+
+	/**
+	 * Contracts every node, and returns the finished hierarchy.
+	 */
+	ContractionHierarchy contract() {
+		IndexedHeap queue = new IndexedHeap(nodeCount);
+		for (int n = 0; n < nodeCount; n++)
+			queue.offer(n, priority(n));
+
+		int[] rank = new int[nodeCount];
+		int nextRank = 0;
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+
+			// lazy update: if it's got more important since it was queued,
+			// put it back and try the next one.
+			double priority = priority(node);
+			if (!queue.isEmpty() && priority > queue.peekKey()) {
+				queue.offer(node, priority);
+				continue;
+			}
+
+			contractNode(node, false);
+			contracted[node] = true;
+			rank[node] = nextRank++;
+
+			// its neighbours have one fewer edge, and maybe some new
+			// shortcuts, so their priorities have changed.
+			for (int i = 0; i < outSize[node]; i++) {
+				int neighbour = to[out[node][i]];
+				if (!contracted[neighbour]) {
+					deletedNeighbours[neighbour]++;
+					queue.update(neighbour, priority(neighbour));
+				}
+			}
+			for (int i = 0; i < inSize[node]; i++) {
+				int neighbour = from[in[node][i]];
+				if (!contracted[neighbour]) {
+					deletedNeighbours[neighbour]++;
+					queue.update(neighbour, priority(neighbour));
+				}
+			}
+		}
+
+		return new ContractionHierarchy(graph, rank, Arrays.copyOf(from,
+				edgeCount), Arrays.copyOf(to, edgeCount), Arrays.copyOf(
+				weight, edgeCount), Arrays.copyOf(first, edgeCount),
+				Arrays.copyOf(second, edgeCount));
+	}
+
+	private double priority(int node) {
+		int shortcuts = contractNode(node, true);
+		int removed = 0;
+		for (int i = 0; i < outSize[node]; i++)
+			if (!contracted[to[out[node][i]]])
+				removed++;
+		for (int i = 0; i < inSize[node]; i++)
+			if (!contracted[from[in[node][i]]])
+				removed++;
+		return shortcuts - removed + deletedNeighbours[node];
+	}
+
+	/**
+	 * Works out the shortcuts contracting the node needs, adding them unless
+	 * this is only a simulation, and returns how many there were.
+	 */
+	private int contractNode(int node, boolean simulate) {
+		int shortcuts = 0;
+		for (int i = 0; i < inSize[node]; i++) {
+			int inEdge = in[node][i];
+			int source = from[inEdge];
+			if (contracted[source])
+				continue;
+
+			// the furthest the witness search needs to look.
+			double limit = -1;
+			for (int j = 0; j < outSize[node]; j++) {
+				int outEdge = out[node][j];
+				if (!contracted[to[outEdge]] && to[outEdge] != source)
+					limit = Math.max(limit, weight[inEdge] + weight[outEdge]);
+			}
+			if (limit < 0)
+				continue;
+			witnessSearch(source, node, limit);
+
+			for (int j = 0; j < outSize[node]; j++) {
+				int outEdge = out[node][j];
+				int target = to[outEdge];
+				if (contracted[target] || target == source)
+					continue;
+
+				double through = weight[inEdge] + weight[outEdge];
+				if (witness.getCost(target) > through) {
+					shortcuts++;
+					if (!simulate)
+						link(addEdge(source, target, through, inEdge,
+								outEdge));
+				}
+			}
+		}
+		return shortcuts;
+	}
+
+	/**
+	 * A Dijkstra search from the source over the uncontracted nodes, not
+	 * going through the node being contracted, and giving up past the limit.
+	 * Afterwards the witness state holds an upper bound on the distance to
+	 * every node it reached.
+	 */
+	private void witnessSearch(int source, int skip, double limit) {
+		witness.reset();
+		IndexedHeap fringe = witness.getFringe();
+		witness.reach(source, 0, -1);
+		fringe.offer(source, 0);
+
+		int settled = 0;
+		while (!fringe.isEmpty() && fringe.peekKey() <= limit
+				&& settled++ < WITNESS_SETTLE_LIMIT) {
+			int node = fringe.poll();
+			witness.close(node);
+			double costToNode = witness.getCost(node);
+			for (int i = 0; i < outSize[node]; i++) {
+				int e = out[node][i];
+				int next = to[e];
+				if (next == skip || contracted[next] || witness.isClosed(next))
+					continue;
+				double cost = costToNode + weight[e];
+				if (cost < witness.getCost(next)) {
+					witness.reach(next, cost, e);
+					fringe.offer(next, cost);
+				}
+			}
+		}
+	}
+
+	private int addEdge(int source, int target, double length, int firstEdge,
+			int secondEdge) {
+		if (edgeCount == from.length) {
+			int capacity = from.length * 2;
+			from = Arrays.copyOf(from, capacity);
+			to = Arrays.copyOf(to, capacity);
+			first = Arrays.copyOf(first, capacity);
+			second = Arrays.copyOf(second, capacity);
+			weight = Arrays.copyOf(weight, capacity);
+		}
+		int e = edgeCount++;
+		from[e] = source;
+		to[e] = target;
+		weight[e] = length;
+		first[e] = firstEdge;
+		second[e] = secondEdge;
+		return e;
+	}
+
+	/**
+	 * Adds the edge to the lists of its two ends, so contraction sees it.
+	 */
+	private void link(int e) {
+		int source = from[e], target = to[e];
+		if (outSize[source] == out[source].length)
+			out[source] = Arrays.copyOf(out[source], out[source].length * 2);
+		out[source][outSize[source]++] = e;
+		if (inSize[target] == in[target].length)
+			in[target] = Arrays.copyOf(in[target], in[target].length * 2);
+		in[target][inSize[target]++] = e;
+	}
+}
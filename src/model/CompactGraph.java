@@ -0,0 +1,238 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A CompactGraph is an immutable, array-based copy of the road graph's
+ * connectivity, in compressed sparse row (CSR) form. It sits alongside the
+ * Node/Segment objects and is built once after loading, so the routing and
+ * graph algorithms can walk plain int and double arrays instead of chasing
+ * pointers through HashSets.
+ *
+ * Nodes are numbered 0..nodeCount-1 in order of node ID, and Node.getIndex
+ * returns a node's number. The directed edges leaving node n are the edges
+ * offsets[n] up to (but not including) offsets[n + 1]; each edge is one
+ * Segment in Node.getExitNeighbours, so two-way roads give an edge each way.
+ * The reverse arrays list the same edges again grouped by the node they enter,
+ * and the neighbour arrays hold the undirected neighbourNodes sets.
+ */
+public class CompactGraph {
+
+	public final int nodeCount, edgeCount;
+
+	// nodes and roads by index, and node locations.
+	public final Node[] nodes;
+	public final Road[] roads;
+	public final double[] xs, ys;
+
+	// forward edges: for edge e, sources[e] -> targets[e], along edges[e].
+	public final int[] offsets;
+	public final int[] sources, targets;
+	public final double[] lengths;
+	public final int[] edgeRoads;
+	public final Segment[] edges;
+
+	// per-edge road attributes, a byte each: the speed category and road
+	// class, and the TravelMode bits of the traffic allowed on it (either way
+	// for the againstMask bits).
+	public final byte[] edgeSpeeds, edgeClasses, edgeAccess;
+	// how long each edge takes at its speed limit, in hours.
+	public final double[] times;
+	// the fastest speed limit on any edge, in km/h.
+	public final double maxSpeed;
+
+	// the forbidden turns, as pairs of edges.
+	public final TurnRestrictions turnRestrictions;
+
+	// reverse edges: the edges into node n are reverseEdges[reverseOffsets[n]]
+	// up to reverseEdges[reverseOffsets[n + 1] - 1].
+	public final int[] reverseOffsets;
+	public final int[] reverseEdges;
+
+	// undirected neighbours, as in Node.getNeighbourNodes.
+	public final int[] neighbourOffsets;
+	public final int[] neighbours;
+
+	// what straight line distances are scaled by to make them a lower bound
+	// on road distance. Location's x axis is stretched a little relative to
+	// the segment lengths, so raw straight lines can overestimate.
+	public final double distanceFactor;
+
+	public CompactGraph(Collection<Node> nodeCollection,
+			Collection<Road> roadCollection) {
+		this(nodeCollection, roadCollection, Collections
+				.<Restriction> emptyList());
+	}
+
+	public CompactGraph(Collection<Node> nodeCollection,
+			Collection<Road> roadCollection,
+			Collection<Restriction> restrictions) {
+		// number the nodes and roads by ID, so the numbering is the same
+		// every time the same data is loaded.
+		nodes = nodeCollection.toArray(new Node[nodeCollection.size()]);
+		Arrays.sort(nodes, new Comparator<Node>() {
+			public int compare(Node a, Node b) {
+				return Integer.compare(a.nodeID, b.nodeID);
+			}
+		});
+		roads = roadCollection.toArray(new Road[roadCollection.size()]);
+		Arrays.sort(roads, new Comparator<Road>() {
+			public int compare(Road a, Road b) {
+				return Integer.compare(a.roadID, b.roadID);
+			}
+		});
+
+		nodeCount = nodes.length;
+		xs = new double[nodeCount];
+		ys = new double[nodeCount];
+		for (int i = 0; i < nodeCount; i++) {
+			nodes[i].setIndex(i);
+			xs[i] = nodes[i].location.x;
+			ys[i] = nodes[i].location.y;
+		}
+
+		Map<Road, Integer> roadIndex = new HashMap<Road, Integer>(
+				roads.length * 4 / 3 + 1);
+		for (int i = 0; i < roads.length; i++)
+			roadIndex.put(roads[i], i);
+
+		// forward edges, sorted within each node so they come out the same
+		// regardless of hash set iteration order.
+		int edgeTotal = 0;
+		for (Node node : nodes)
+			edgeTotal += node.getExitNeighbours().size();
+		edgeCount = edgeTotal;
+
+		offsets = new int[nodeCount + 1];
+		sources = new int[edgeCount];
+		targets = new int[edgeCount];
+		lengths = new double[edgeCount];
+		edgeRoads = new int[edgeCount];
+		edges = new Segment[edgeCount];
+		edgeSpeeds = new byte[edgeCount];
+		edgeClasses = new byte[edgeCount];
+		edgeAccess = new byte[edgeCount];
+		times = new double[edgeCount];
+
+		Comparator<Segment> edgeOrder = new Comparator<Segment>() {
+			public int compare(Segment a, Segment b) {
+				int c = Integer.compare(a.end.getIndex(), b.end.getIndex());
+				if (c == 0)
+					c = Integer.compare(a.road.roadID, b.road.roadID);
+				if (c == 0)
+					c = Double.compare(a.length, b.length);
+				return c;
+			}
+		};
+
+		int e = 0;
+		for (int n = 0; n < nodeCount; n++) {
+			offsets[n] = e;
+			Collection<Segment> exits = nodes[n].getExitNeighbours();
+			Segment[] sorted = exits.toArray(new Segment[exits.size()]);
+			Arrays.sort(sorted, edgeOrder);
+			for (Segment segment : sorted) {
+				sources[e] = n;
+				targets[e] = segment.end.getIndex();
+				lengths[e] = segment.length;
+				edgeRoads[e] = roadIndex.get(segment.road);
+				edges[e] = segment;
+				edgeSpeeds[e] = (byte) segment.road.speed;
+				edgeClasses[e] = (byte) segment.road.roadclass;
+				edgeAccess[e] = (byte) TravelMode.accessOf(segment.road);
+				times[e] = segment.length / segment.road.getSpeedLimit();
+				e++;
+			}
+		}
+		offsets[nodeCount] = e;
+
+		// reverse edges, by counting how many edges enter each node.
+		reverseOffsets = new int[nodeCount + 1];
+		for (int i = 0; i < edgeCount; i++)
+			reverseOffsets[targets[i] + 1]++;
+		for (int n = 0; n < nodeCount; n++)
+			reverseOffsets[n + 1] += reverseOffsets[n];
+		reverseEdges = new int[edgeCount];
+		int[] fill = Arrays.copyOf(reverseOffsets, nodeCount);
+		for (int i = 0; i < edgeCount; i++)
+			reverseEdges[fill[targets[i]]++] = i;
+
+		// the largest factor that keeps every edge at least as long as the
+		// scaled straight line between its ends.
+		double factor = 1;
+		for (int i = 0; i < edgeCount; i++) {
+			double straight = distance(sources[i], targets[i]);
+			if (straight > 0)
+				factor = Math.min(factor, lengths[i] / straight);
+		}
+		distanceFactor = factor;
+
+		double fastest = Road.speedLimit(0);
+		for (int i = 0; i < edgeCount; i++)
+			fastest = Math.max(fastest, Road.speedLimit(edgeSpeeds[i]));
+		maxSpeed = fastest;
+
+		// undirected neighbours.
+		neighbourOffsets = new int[nodeCount + 1];
+		int neighbourTotal = 0;
+		for (int n = 0; n < nodeCount; n++) {
+			neighbourOffsets[n] = neighbourTotal;
+			neighbourTotal += nodes[n].getNeighbourNodes().size();
+		}
+		neighbourOffsets[nodeCount] = neighbourTotal;
+		neighbours = new int[neighbourTotal];
+		for (int n = 0; n < nodeCount; n++) {
+			int i = neighbourOffsets[n];
+			for (Node neighbour : nodes[n].getNeighbourNodes())
+				neighbours[i++] = neighbour.getIndex();
+			Arrays.sort(neighbours, neighbourOffsets[n], i);
+		}
+
+		turnRestrictions = new TurnRestrictions(this, restrictions);
+	}
+
+	/**
+	 * Returns the node at the other end of the edge from the given one, for
+	 * following routes whose edges may be used either way (see TravelMode).
+	 */
+	public int otherEnd(int edge, int node) {
+		return targets[edge] == node ? sources[edge] : targets[edge];
+	}
+
+	/**
+	 * Returns the straight line distance between two nodes.
+	 */
+	public double distance(int from, int to) {
+		return Math.hypot(xs[from] - xs[to], ys[from] - ys[to]);
+	}
+
+	/**
+	 * Returns a hash of the nodes, edges and edge lengths, for telling whether
+	 * something precomputed from a graph still belongs to it.
+	 */
+	public long fingerprint() {
+		long hash = nodeCount * 31L + edgeCount;
+		for (int i = 0; i < nodeCount; i++)
+			hash = hash * 31 + nodes[i].nodeID;
+		for (int i = 0; i <= nodeCount; i++)
+			hash = hash * 31 + offsets[i];
+		for (int i = 0; i < edgeCount; i++) {
+			hash = hash * 31 + targets[i];
+			hash = hash * 31 + Double.doubleToLongBits(lengths[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns a lower bound on the road distance between two nodes, which
+	 * makes an admissible and consistent A* heuristic.
+	 */
+	public double estimate(int from, int to) {
+		return distanceFactor * distance(from, to);
+	}
+}
@@ -0,0 +1,56 @@
+package model;
+
+import java.util.Arrays;
+
+import util.Location;
+
+/**
+ * Geometry is one packed store for the polyline points of every Segment. The
+ * points are kept as x, y pairs side by side in a single double array, and a
+ * Segment only remembers where its points start and how many there are, so
+ * there's no Location object per point.
+ *
+ * Setting a point past the end grows the store, which isn't safe to do from
+ * several threads at once; presize it if the points are being filled in
+ * concurrently.
+ */
+public class Geometry {
+
+	private double[] coords;
+
+	public Geometry(int capacity) {
+		coords = new double[Math.max(capacity, 1) * 2];
+	}
+
+	/**
+	 * Sets a point from a latitude and longitude, as they appear in the data
+	 * files.
+	 */
+	public void setLatLon(int point, double lat, double lon) {
+		set(point, Location.xFromLatLon(lat, lon), Location.yFromLatLon(lat));
+	}
+
+	public void set(int point, double x, double y) {
+		if (2 * point + 1 >= coords.length)
+			coords = Arrays.copyOf(coords, Math.max(coords.length * 2,
+					2 * point + 2));
+		coords[2 * point] = x;
+		coords[2 * point + 1] = y;
+	}
+
+	public double getX(int point) {
+		return coords[2 * point];
+	}
+
+	public double getY(int point) {
+		return coords[2 * point + 1];
+	}
+
+	/**
+	 * Throws away any spare room past the given number of points.
+	 */
+	public void trim(int points) {
+		if (coords.length != points * 2)
+			coords = Arrays.copyOf(coords, points * 2);
+	}
+}
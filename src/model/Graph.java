@@ -5,16 +5,23 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
-import a_star.AStar;
-import articulation_points.ArtPointSearch;
+import a_star.Isochrone;
+import a_star.PathFinder;
+import a_star.RouteCache;
+import a_star.Route;
+import a_star.SearchMode;
+import a_star.ServiceArea;
+import a_star.Weighting;
+import articulation_points.BiconnectedIndex;
+import util.IntMap;
 import util.Location;
 import util.Parser;
 import Map.Mapper;
@@ -27,10 +34,14 @@ import Map.Mapper;
  * @author Tony Butler-Yeoman
  */
 public class Graph {
+
+	// how far past the edge of the screen to draw, in pixels.
+	private static final double DRAW_MARGIN = 10;
+
 	// map node IDs to Nodes.
-	private Map<Integer, Node> nodes = new HashMap<>();
+	private IntMap<Node> nodes = new IntMap<>();
 	// map road IDs to Roads.
-	private Map<Integer, Road> roads;
+	private IntMap<Road> roads;
 	// just some collection of Segments.
 	Collection<Segment> segments;
 	Node highlightedNode;
@@ -38,40 +49,143 @@ public class Graph {
 
 	// selected aStar route
 	private List<Segment> selectedDistancePath = new ArrayList<Segment>();
+	// the segments of that route that cross a bridge.
+	private List<Segment> pathBridges = new ArrayList<Segment>();
 	// art points for all nodes
 	private Set<Node> artPoints;
+	// components, blocks and bridges, built once at load.
+	private BiconnectedIndex biconnected;
+	// the nodes by location, for finding the one nearest a point, and the
+	// segments by bounding box, so drawing only looks at what's on screen.
+	private NodeGrid nodeGrid;
+	private SegmentTree segmentTree;
+	// simplified segments, for drawing zoomed out.
+	private SegmentDetail segmentDetail;
 	// art points for current node;
 	private Set<Node> currentArtPoints;
 	private Node start;
 	private Node goal;
 	private boolean displayArtPoints;
 
+	// array-based copy of the connectivity, for the graph algorithms.
+	private CompactGraph compactGraph;
+	// route search, reusing its working arrays from one search to the next.
+	private SearchMode searchMode = SearchMode.ASTAR;
+	// what routes minimise, and who they're for.
+	private Weighting weighting = Weighting.DISTANCE;
+	private TravelMode travelMode = TravelMode.ANY;
+	// the search itself, and the same behind the route cache if there is one.
+	private PathFinder engine, pathFinder;
+	// routes already found, shared with whoever else is routing; may be null.
+	private RouteCache routeCache;
+	// service area search, and the area being shown (if any).
+	private Isochrone isochrone;
+	private ServiceArea serviceArea;
+	// where the data came from, and where preprocessing gets saved.
+	private File directory;
+
 	public Graph(File nodes, File roads, File segments, File polygons) {
-		this.setNodes(Parser.parseNodes(nodes, this));
-		this.setRoads(Parser.parseRoads(roads, this));
-		this.segments = Parser.parseSegments(segments, this);
-		ArtPointSearch artPtSearch = new ArtPointSearch(getNodes());
-		artPoints = artPtSearch.getArticulations();
+		this(nodes, roads, segments, polygons, null);
+	}
+
+	public Graph(File nodes, File roads, File segments, File polygons,
+			File restrictions) {
+		this(nodes, roads, segments, polygons, restrictions,
+				Parser.Mode.PARALLEL);
+	}
+
+	/**
+	 * Loads the graph from the snapshot next to the data files if there's an
+	 * up to date one, and otherwise parses the files (in the given mode) and
+	 * writes a fresh snapshot for next time. The restrictions file may be
+	 * null; if there are restrictions, routes are found with the
+	 * TURN_RESTRICTED search so they never take a forbidden turn.
+	 */
+	public Graph(File nodes, File roads, File segments, File polygons,
+			File restrictions, Parser.Mode mode) {
+		directory = segments.getAbsoluteFile().getParentFile();
+		File snapshot = GraphSnapshot.fileFor(segments);
+		if (!GraphSnapshot.read(this, snapshot, nodes, roads, segments)) {
+			this.setNodes(Parser.parseNodes(nodes, this, mode));
+			this.setRoads(Parser.parseRoads(roads, this, mode));
+			this.segments = Parser.parseSegments(segments, this, mode);
+
+			try {
+				GraphSnapshot.write(this, snapshot, nodes, roads, segments);
+			} catch (IOException e) {
+				// the snapshot is only there to speed up the next load, so
+				// carry on without one if the directory isn't writable.
+			}
+		}
+
+		// restrictions aren't in the snapshot; the file is tiny.
+		List<Restriction> turns = restrictions == null ? Collections
+				.<Restriction> emptyList() : Parser
+				.parseRestrictions(restrictions);
+		compactGraph = new CompactGraph(getNodes().values(), getRoads()
+				.values(), turns);
+		nodeGrid = new NodeGrid(compactGraph);
+		segmentTree = new SegmentTree(this.segments);
+		segmentDetail = new SegmentDetail(segmentTree);
+		biconnected = new BiconnectedIndex(compactGraph);
+		artPoints = biconnected.getArticulations();
+		if (compactGraph.turnRestrictions.size() > 0)
+			searchMode = SearchMode.TURN_RESTRICTED;
+		createPathFinder();
 	}
 
 	public void draw(Graphics g, Dimension screen, Location origin, double scale) {
+		drawBase(g, screen, origin, scale);
+		drawOverlays(g, screen, origin, scale);
+	}
+
+	/**
+	 * Draws the map itself: the roads, coloured by whether they're one-way,
+	 * and the nodes. This only changes when a new graph is loaded, so it can
+	 * be drawn once and kept (see Mapper's TileCache).
+	 */
+	public void drawBase(Graphics g, Dimension screen, Location origin,
+			double scale) {
 		// a compatibility wart on swing is that it has to give out Graphics
 		// objects, but Graphics2D objects are nicer to work with. Luckily
 		// they're a subclass, and swing always gives them out anyway, so we can
 		// just do this.
 		Graphics2D g2 = (Graphics2D) g;
+		double[] window = window(screen, origin, scale);
 
-		// draw all the segments.
-		for (Segment s : segments) {
-			if (s.road.oneway != 0) {
+		// draw the segments on screen, as simplified as the scale allows, and
+		// leaving out minor roads when zoomed well out.
+		int level = SegmentDetail.levelFor(scale);
+		for (int entry : segmentTree.query(window[0], window[1], window[2],
+				window[3])) {
+			Segment s = segmentTree.get(entry);
+			if (!SegmentDetail.isShown(s.road, scale))
+				continue;
+			if (s.road.oneway != 0)
 				g2.setColor(Mapper.ONEWAY_SEGMENT_COLOUR);
-				s.draw(g2, origin, scale);
-			} else {
+			else
 				g2.setColor(Mapper.SEGMENT_COLOUR);
-				s.draw(g2, origin, scale);
-			}
+			segmentDetail.draw(g2, level, entry, origin, scale);
 		}
 
+		// draw the nodes on screen, unless the minor roads are left out.
+		if (!SegmentDetail.areNodesShown(scale))
+			return;
+		g2.setColor(Mapper.NODE_COLOUR);
+		for (int i : nodeGrid.within(window[0], window[1], window[2],
+				window[3]))
+			compactGraph.nodes[i].draw(g2, screen, origin, scale);
+	}
+
+	/**
+	 * Draws everything that changes as the map is used over the top of the
+	 * base map: highlights, articulation points, the service area and the
+	 * route.
+	 */
+	public void drawOverlays(Graphics g, Dimension screen, Location origin,
+			double scale) {
+		Graphics2D g2 = (Graphics2D) g;
+
 		// draw the segments of all highlighted roads.
 		g2.setColor(Mapper.HIGHLIGHT_COLOUR);
 		g2.setStroke(new BasicStroke(3));
@@ -81,15 +195,15 @@ public class Graph {
 			}
 		}
 
-		// draw all the nodes and articulation nodes
-		for (Node n : getNodes().values())
-			if (artPoints.contains(n) && displayArtPoints) {
-				g2.setColor(Mapper.ART_POINTS_COLOUR);
-				n.draw(g2, screen, origin, scale);
-			} else {
-				g2.setColor(Mapper.NODE_COLOUR);
-				n.draw(g2, screen, origin, scale);
-			}
+		// draw the articulation nodes on screen.
+		if (displayArtPoints) {
+			double[] window = window(screen, origin, scale);
+			g2.setColor(Mapper.ART_POINTS_COLOUR);
+			for (int i : nodeGrid.within(window[0], window[1], window[2],
+					window[3]))
+				if (artPoints.contains(compactGraph.nodes[i]))
+					compactGraph.nodes[i].draw(g2, screen, origin, scale);
+		}
 
 		// draw the highlighted node, if it exists.
 		if (highlightedNode != null) {
@@ -103,6 +217,15 @@ public class Graph {
 			}
 		}
 
+		// draw the service area under the route.
+		if (serviceArea != null) {
+			g2.setColor(Mapper.SERVICE_AREA_COLOUR);
+			for (Segment seg : serviceArea.getSegments())
+				seg.draw(g2, origin, scale);
+			for (Node n : serviceArea.getNodes())
+				n.draw(g2, screen, origin, scale);
+		}
+
 		// highlight start node of AStar
 		if (start != null) {
 			g2.setColor(Mapper.ASTAR_ROUTE);
@@ -124,10 +247,118 @@ public class Graph {
 		}
 	}
 
+	/**
+	 * Returns the part of the map on screen, as { minX, minY, maxX, maxY },
+	 * with a margin for the width of the lines and the size of the nodes.
+	 */
+	private static double[] window(Dimension screen, Location origin,
+			double scale) {
+		double margin = DRAW_MARGIN / scale;
+		return new double[] { origin.x - margin,
+				origin.y - screen.height / scale - margin,
+				origin.x + screen.width / scale + margin, origin.y + margin };
+	}
+
 	/** A STAR */
 	public void pathSearch() {
-		AStar aStar = new AStar(getStartNode(), getEndNode());
-		setDistancePath(aStar.search());
+		Route route = pathFinder.search(getStartNode().getIndex(), getEndNode()
+				.getIndex());
+		setDistancePath(route == null ? null : route.toSegments(compactGraph));
+		pathBridges = new ArrayList<Segment>();
+		if (route != null)
+			for (int e : biconnected.bridgesOn(route.edges))
+				pathBridges.add(compactGraph.edges[e]);
+	}
+
+	/**
+	 * Returns the segments of the last route found that cross a bridge, so
+	 * losing any one of them would leave no way through at all.
+	 */
+	public List<Segment> getPathBridges() {
+		return pathBridges;
+	}
+
+	public SearchMode getSearchMode() {
+		return searchMode;
+	}
+
+	public void setSearchMode(SearchMode mode) {
+		this.searchMode = mode;
+		createPathFinder();
+	}
+
+	public Weighting getWeighting() {
+		return weighting;
+	}
+
+	/**
+	 * Sets whether routes are the shortest or the fastest.
+	 */
+	public void setWeighting(Weighting weighting) {
+		this.weighting = weighting;
+		createPathFinder();
+	}
+
+	public TravelMode getTravelMode() {
+		return travelMode;
+	}
+
+	/**
+	 * Sets who routes are for, so they only use roads allowed for them.
+	 */
+	public void setTravelMode(TravelMode travelMode) {
+		this.travelMode = travelMode;
+		createPathFinder();
+	}
+
+	private void createPathFinder() {
+		engine = searchMode.create(compactGraph, directory, weighting,
+				travelMode);
+		cachePathFinder();
+		isochrone = new Isochrone(compactGraph, weighting, travelMode);
+	}
+
+	/**
+	 * Puts the route cache (if any) in front of the search already made.
+	 */
+	private void cachePathFinder() {
+		pathFinder = routeCache == null ? engine : routeCache.cached(
+				compactGraph, engine, getCostMode());
+	}
+
+	/**
+	 * Returns a number standing for the search mode, weighting and travel
+	 * mode together, which is what route cache entries are kept apart by.
+	 */
+	public int getCostMode() {
+		return (searchMode.ordinal() * Weighting.values().length + weighting
+				.ordinal()) * TravelMode.values().length + travelMode.ordinal();
+	}
+
+	/**
+	 * Puts the cache in front of the route search. It must only hold routes
+	 * for this graph.
+	 */
+	public void setRouteCache(RouteCache routeCache) {
+		this.routeCache = routeCache;
+		cachePathFinder();
+	}
+
+	/**
+	 * Finds and shows everything reachable from the node within the budget,
+	 * which is in km or hours depending on the weighting.
+	 */
+	public ServiceArea findServiceArea(Node from, double budget) {
+		serviceArea = isochrone.search(from.getIndex(), budget);
+		return serviceArea;
+	}
+
+	public ServiceArea getServiceArea() {
+		return serviceArea;
+	}
+
+	public void clearServiceArea() {
+		serviceArea = null;
 	}
 
 	public void setHighlight(Node node) {
@@ -142,19 +373,40 @@ public class Graph {
 		this.highlightedRoads = roads;
 	}
 
-	public Map<Integer, Node> getNodes() {
+	public IntMap<Node> getNodes() {
 		return nodes;
 	}
 
-	public void setNodes(Map<Integer, Node> nodes) {
+	public void setNodes(IntMap<Node> nodes) {
 		this.nodes = nodes;
 	}
 
-	public Map<Integer, Road> getRoads() {
+	public CompactGraph getCompactGraph() {
+		return compactGraph;
+	}
+
+	/**
+	 * Returns the node nearest the location, or null if there's none within
+	 * the maximum distance.
+	 */
+	public Node findNearestNode(Location location, double maxDistance) {
+		int nearest = nodeGrid.nearest(location.x, location.y, maxDistance);
+		return nearest < 0 ? null : compactGraph.nodes[nearest];
+	}
+
+	public NodeGrid getNodeGrid() {
+		return nodeGrid;
+	}
+
+	public BiconnectedIndex getBiconnectedIndex() {
+		return biconnected;
+	}
+
+	public IntMap<Road> getRoads() {
 		return roads;
 	}
 
-	public void setRoads(Map<Integer, Road> roads) {
+	public void setRoads(IntMap<Road> roads) {
 		this.roads = roads;
 	}
 
@@ -186,6 +438,10 @@ public class Graph {
 		this.currentArtPoints = artPoints;
 	}
 
+	public Set<Node> getArtPoints() {
+		return artPoints;
+	}
+
 	public void setArtPoints(Set<Node> artPoints) {
 		this.artPoints = artPoints;
 	}
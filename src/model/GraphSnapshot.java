@@ -0,0 +1,266 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import util.IntMap;
+import util.Location;
+
+/**
+ * A GraphSnapshot is a compact binary copy of a loaded Graph, written next to
+ * the data files after they've been parsed, so the next load can skip the
+ * parsing altogether.
+ *
+ * The file starts with a header holding a magic number, the format version,
+ * the size and modification time of each source file, and a CRC32 of
+ * everything after the header. If any of those don't match, the snapshot is
+ * stale (or broken) and the caller should fall back to the text files. After
+ * the header come the nodes, roads and segments, with segments referring to
+ * their road and nodes by position rather than by ID. Snapshots are read back
+ * through a memory mapping.
+ */
+public class GraphSnapshot {
+
+	public static final String SNAPSHOT_FILENAME = "graph.snapshot";
+
+	private static final int MAGIC = 0x414b4d50; // "AKMP"
+	private static final int VERSION = 4;
+
+	// magic, version, three (length, modified) pairs, payload length, crc.
+	private static final int HEADER_SIZE = 4 + 4 + 3 * (8 + 8) + 8 + 8;
+	private static final int PAYLOAD_LENGTH_OFFSET = HEADER_SIZE - 16;
+
+	/**
+	 * Returns where the snapshot for the given segments file lives.
+	 */
+	public static File fileFor(File segments) {
+		return new File(segments.getAbsoluteFile().getParentFile(),
+				SNAPSHOT_FILENAME);
+	}
+
+	/**
+	 * Fills in the graph from the snapshot, returning true if that worked.
+	 * Returns false, leaving the graph untouched, if there is no snapshot or
+	 * it doesn't match the given source files.
+	 */
+	public static boolean read(Graph graph, File snapshot, File... sources) {
+		if (!snapshot.isFile())
+			return false;
+
+		try {
+			ByteBuffer bytes = map(snapshot);
+
+			if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION)
+				return false;
+			for (File source : sources) {
+				if (bytes.getLong() != source.length()
+						|| bytes.getLong() != source.lastModified())
+					return false;
+			}
+			long payloadLength = bytes.getLong();
+			long checksum = bytes.getLong();
+			if (payloadLength != bytes.remaining())
+				return false;
+
+			CRC32 crc = new CRC32();
+			crc.update(bytes.duplicate());
+			if (crc.getValue() != checksum)
+				return false;
+
+			readPayload(graph, bytes);
+			return true;
+		} catch (IOException | BufferUnderflowException e) {
+			// a snapshot that can't be read is just a stale one.
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the graph out as a snapshot of the given source files. The
+	 * snapshot is written to a temporary file first, so a half-written one is
+	 * never picked up.
+	 */
+	public static void write(Graph graph, File snapshot, File... sources)
+			throws IOException {
+		File temp = new File(snapshot.getPath() + ".tmp");
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		long payloadLength, checksum;
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (File source : sources) {
+				out.writeLong(source.length());
+				out.writeLong(source.lastModified());
+			}
+			// the payload length and checksum are filled in afterwards.
+			out.writeLong(0);
+			out.writeLong(0);
+
+			CheckedOutputStream checked = new CheckedOutputStream(out,
+					new CRC32());
+			DataOutputStream payload = new DataOutputStream(checked);
+			writePayload(graph, payload);
+			payload.flush();
+			payloadLength = payload.size();
+			checksum = checked.getChecksum().getValue();
+		} finally {
+			out.close();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(temp, "rw");
+		try {
+			file.seek(PAYLOAD_LENGTH_OFFSET);
+			file.writeLong(payloadLength);
+			file.writeLong(checksum);
+		} finally {
+			file.close();
+		}
+
+		Files.move(temp.toPath(), snapshot.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void writePayload(Graph graph, DataOutputStream out)
+			throws IOException {
+		// nodes, remembering the position of each.
+		Map<Node, Integer> nodeIndex = new HashMap<Node, Integer>();
+		out.writeInt(graph.getNodes().size());
+		for (Node node : graph.getNodes().values()) {
+			nodeIndex.put(node, nodeIndex.size());
+			out.writeInt(node.nodeID);
+			out.writeDouble(node.location.x);
+			out.writeDouble(node.location.y);
+		}
+
+		// roads, likewise.
+		Map<Road, Integer> roadIndex = new HashMap<Road, Integer>();
+		out.writeInt(graph.getRoads().size());
+		for (Road road : graph.getRoads().values()) {
+			roadIndex.put(road, roadIndex.size());
+			out.writeInt(road.roadID);
+			out.writeInt(road.oneway);
+			out.writeByte(road.speed);
+			out.writeByte(road.roadclass);
+			out.writeByte(road.notforcar);
+			out.writeByte(road.notforpede);
+			out.writeByte(road.notforbicy);
+			writeString(out, road.name);
+			writeString(out, road.city);
+		}
+
+		// segments, with their ends as node positions; this is the adjacency.
+		int points = 0;
+		for (Segment segment : graph.segments)
+			points += segment.pointCount;
+		out.writeInt(graph.segments.size());
+		out.writeInt(points);
+		for (Segment segment : graph.segments) {
+			out.writeInt(roadIndex.get(segment.road));
+			out.writeInt(nodeIndex.get(segment.start));
+			out.writeInt(nodeIndex.get(segment.end));
+			out.writeDouble(segment.length);
+			out.writeInt(segment.pointCount);
+			for (int i = 0; i < segment.pointCount; i++) {
+				out.writeDouble(segment.geometry.getX(segment.firstPoint + i));
+				out.writeDouble(segment.geometry.getY(segment.firstPoint + i));
+			}
+		}
+	}
+
+	private static void readPayload(Graph graph, ByteBuffer in) {
+		Node[] nodes = new Node[in.getInt()];
+		IntMap<Node> nodeMap = new IntMap<Node>(nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			int nodeID = in.getInt();
+			double x = in.getDouble();
+			double y = in.getDouble();
+			nodes[i] = new Node(nodeID, new Location(x, y));
+			nodeMap.put(nodeID, nodes[i]);
+		}
+
+		Road[] roads = new Road[in.getInt()];
+		IntMap<Road> roadMap = new IntMap<Road>(roads.length);
+		for (int i = 0; i < roads.length; i++) {
+			int roadID = in.getInt();
+			int oneway = in.getInt();
+			int speed = in.get();
+			int roadclass = in.get();
+			int notforcar = in.get();
+			int notforpede = in.get();
+			int notforbicy = in.get();
+			String name = readString(in);
+			String city = readString(in);
+			// the type isn't kept by Road, so isn't stored.
+			roads[i] = new Road(roadID, 0, name, city, oneway, speed,
+					roadclass, notforcar, notforpede, notforbicy);
+			roadMap.put(roadID, roads[i]);
+		}
+
+		int segmentCount = in.getInt();
+		Geometry geometry = new Geometry(in.getInt());
+		int points = 0;
+		List<Segment> segments = new ArrayList<Segment>(segmentCount);
+		for (int i = 0; i < segmentCount; i++) {
+			Road road = roads[in.getInt()];
+			Node start = nodes[in.getInt()];
+			Node end = nodes[in.getInt()];
+			double length = in.getDouble();
+			int pointCount = in.getInt();
+			for (int j = 0; j < pointCount; j++)
+				geometry.set(points + j, in.getDouble(), in.getDouble());
+
+			Segment segment = new Segment(road, length, start, end, geometry,
+					points, pointCount);
+			segment.link();
+			segments.add(segment);
+			points += pointCount;
+		}
+
+		graph.setNodes(nodeMap);
+		graph.setRoads(roadMap);
+		graph.segments = segments;
+	}
+
+	private static void writeString(DataOutputStream out, String str)
+			throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+}
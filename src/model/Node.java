@@ -26,13 +26,17 @@ public class Node {
 	public final Collection<Node> neighbourNodes;
 	public final Collection<Segment> exitNeighbours;
 	public final Collection<Segment> enterNeighbours;
-	
-	//articulation point
-	private int depth = Integer.MAX_VALUE;
+
+	// position in the graph's CompactGraph
+	private int index = -1;
 
 	public Node(int nodeID, double lat, double lon) {
+		this(nodeID, Location.newFromLatLon(lat, lon));
+	}
+
+	public Node(int nodeID, Location location) {
 		this.nodeID = nodeID;
-		this.location = Location.newFromLatLon(lat, lon);
+		this.location = location;
 		this.segments = new HashSet<Segment>();
 		this.exitNeighbours = new HashSet<Segment>();
 		this.enterNeighbours = new HashSet<Segment>();
@@ -41,12 +45,15 @@ public class Node {
 
 	public void draw(Graphics g, Dimension area, Location origin, double scale) {
 		Point p = location.asPoint(origin, scale);
+		int size = (int) (Mapper.NODE_GRADIENT * Math.log(scale) + Mapper.NODE_INTERCEPT);
 
-		// for efficiency, don't render nodes that are off-screen.
-		if (p.x < 0 || p.x > area.width || p.y < 0 || p.y > area.height)
+		// for efficiency, don't render nodes that are off-screen. ones just
+		// off the edge still poke onto it, which matters when the map is drawn
+		// in tiles.
+		if (p.x < -size || p.x > area.width + size || p.y < -size
+				|| p.y > area.height + size)
 			return;
 
-		int size = (int) (Mapper.NODE_GRADIENT * Math.log(scale) + Mapper.NODE_INTERCEPT);
 		g.fillRect(p.x - size / 2, p.y - size / 2, size, size);
 	}
 
@@ -99,12 +106,12 @@ public class Node {
 			return 0;
 		else return this.location.distance(goal.location);
 	}
-	
-	public int getDepth() {
-		return depth;
+
+	public int getIndex() {
+		return index;
 	}
 
-	public void setDepth(int depth) {
-		this.depth = depth;
+	void setIndex(int index) {
+		this.index = index;
 	}
 }
\ No newline at end of file
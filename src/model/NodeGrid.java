@@ -0,0 +1,198 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index over the node locations, for finding the node nearest a
+ * point (a click, or a GPS fix to snap to the roads) without looking at every
+ * node. The bounding box of the map is cut into a grid of square cells, about
+ * NODES_PER_CELL nodes to a cell on average, and the nodes are packed into one
+ * array cell by cell, the way CompactGraph packs edges: the nodes in cell c are
+ * at cellOffsets[c] up to cellOffsets[c + 1] - 1. Their coordinates are copied
+ * alongside, so a cell is scanned without touching the Node objects.
+ *
+ * A query looks at the cell the point is in, then the ring of cells around
+ * that, and so on out, and stops as soon as the next ring is further away than
+ * what it's already found or than the maximum radius. Queries don't change
+ * the grid, so any number of threads can share one.
+ */
+public class NodeGrid {
+
+	private static final int NODES_PER_CELL = 2;
+
+	private final double minX, minY, cellSize;
+	private final int columns, rows;
+
+	private final int[] cellOffsets;
+	// node indices in cell order, and their coordinates.
+	private final int[] cellNodes;
+	private final double[] xs, ys;
+
+	public NodeGrid(CompactGraph graph) {
+		int n = graph.nodeCount;
+		double lowX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double lowY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			lowX = Math.min(lowX, graph.xs[i]);
+			lowY = Math.min(lowY, graph.ys[i]);
+			maxX = Math.max(maxX, graph.xs[i]);
+			maxY = Math.max(maxY, graph.ys[i]);
+		}
+		if (n == 0)
+			lowX = lowY = maxX = maxY = 0;
+		minX = lowX;
+		minY = lowY;
+
+		// square cells, sized so the cells cover the box with about
+		// NODES_PER_CELL nodes each.
+		double width = maxX - minX, height = maxY - minY;
+		double area = Math.max(width * height, 1e-12);
+		double size = Math.sqrt(area * NODES_PER_CELL / Math.max(n, 1));
+		if (size <= 0 || Double.isNaN(size))
+			size = 1;
+		cellSize = Math.max(size, Math.max(width, height) / 4096);
+		columns = (int) (width / cellSize) + 1;
+		rows = (int) (height / cellSize) + 1;
+
+		// count the nodes in each cell, then fill them in.
+		int[] cells = new int[n];
+		cellOffsets = new int[columns * rows + 1];
+		for (int i = 0; i < n; i++) {
+			cells[i] = column(graph.xs[i]) + row(graph.ys[i]) * columns;
+			cellOffsets[cells[i] + 1]++;
+		}
+		for (int c = 0; c < columns * rows; c++)
+			cellOffsets[c + 1] += cellOffsets[c];
+		int[] fill = Arrays.copyOf(cellOffsets, columns * rows);
+		cellNodes = new int[n];
+		xs = new double[n];
+		ys = new double[n];
+		for (int i = 0; i < n; i++) {
+			int slot = fill[cells[i]]++;
+			cellNodes[slot] = i;
+			xs[slot] = graph.xs[i];
+			ys[slot] = graph.ys[i];
+		}
+	}
+
+	/**
+	 * Returns the index of the node nearest the point, or -1 if there's none
+	 * within the maximum radius.
+	 */
+	public int nearest(double x, double y, double maxRadius) {
+		int[] nearest = nearest(x, y, 1, maxRadius);
+		return nearest.length == 0 ? -1 : nearest[0];
+	}
+
+	/**
+	 * Returns the indices of the k nodes nearest the point, nearest first,
+	 * leaving out any further away than the maximum radius (so there may be
+	 * fewer than k).
+	 */
+	public int[] nearest(double x, double y, int k, double maxRadius) {
+		if (k < 0)
+			throw new IllegalArgumentException("k must not be negative");
+		// the best found so far, kept sorted by distance; k is small.
+		int[] found = new int[k];
+		double[] squares = new double[k];
+		int count = 0;
+		double limit = maxRadius * maxRadius;
+
+		int cx = column(x), cy = row(y);
+		int lastRing = Math.max(Math.max(cx, columns - 1 - cx), Math.max(cy,
+				rows - 1 - cy));
+		for (int r = 0; r <= lastRing && k > 0; r++) {
+			double gap = ringDistance(x, y, cx, cy, r);
+			if (gap > maxRadius || (count == k && gap * gap > squares[k - 1]))
+				break;
+			// the cells of the ring: whole rows at the top and bottom, and
+			// just the two ends of the rows in between.
+			for (int row = Math.max(cy - r, 0); row <= Math.min(cy + r,
+					rows - 1); row++) {
+				boolean whole = row == cy - r || row == cy + r;
+				int step = whole || r == 0 ? 1 : 2 * r;
+				for (int column = cx - r; column <= cx + r; column += step) {
+					if (column < 0 || column >= columns)
+						continue;
+					int cell = column + row * columns;
+					count = scan(cell, x, y, limit, found, squares, count);
+				}
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Returns the indices of the nodes inside the window.
+	 */
+	public int[] within(double minX, double minY, double maxX, double maxY) {
+		int[] found = new int[16];
+		int count = 0;
+		int left = Math.max(column(minX), 0);
+		int right = Math.min(column(maxX), columns - 1);
+		int bottom = Math.max(row(minY), 0);
+		int top = Math.min(row(maxY), rows - 1);
+		for (int row = bottom; row <= top; row++) {
+			for (int column = left; column <= right; column++) {
+				int cell = column + row * columns;
+				for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+					if (xs[i] < minX || xs[i] > maxX || ys[i] < minY
+							|| ys[i] > maxY)
+						continue;
+					if (count == found.length)
+						found = Arrays.copyOf(found, count * 2);
+					found[count++] = cellNodes[i];
+				}
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Adds the nodes of the cell that are within the limit (a squared
+	 * distance) to the sorted list of the best so far, dropping the furthest
+	 * when it's full, and returns how many are in the list now.
+	 */
+	private int scan(int cell, double x, double y, double limit, int[] found,
+			double[] squares, int count) {
+		int k = found.length;
+		for (int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++) {
+			double dx = xs[i] - x, dy = ys[i] - y;
+			double squared = dx * dx + dy * dy;
+			if (squared > limit || (count == k && squared >= squares[k - 1]))
+				continue;
+			int j = count < k ? count++ : k - 1;
+			while (j > 0 && squares[j - 1] > squared) {
+				squares[j] = squares[j - 1];
+				found[j] = found[j - 1];
+				j--;
+			}
+			squares[j] = squared;
+			found[j] = cellNodes[i];
+		}
+		return count;
+	}
+
+	private int column(double x) {
+		return (int) Math.floor((x - minX) / cellSize);
+	}
+
+	private int row(double y) {
+		return (int) Math.floor((y - minY) / cellSize);
+	}
+
+	/**
+	 * A lower bound on the distance from the point to anything in ring r: the
+	 * distance to the nearest side of the square of rings inside it.
+	 */
+	private double ringDistance(double x, double y, int cx, int cy, int r) {
+		if (r == 0)
+			return 0;
+		double left = x - (minX + (cx - r + 1) * cellSize);
+		double right = minX + (cx + r) * cellSize - x;
+		double below = y - (minY + (cy - r + 1) * cellSize);
+		double above = minY + (cy + r) * cellSize - y;
+		return Math.max(0, Math.min(Math.min(left, right), Math.min(below,
+				above)));
+	}
+}
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * A Restriction is a forbidden turn, as listed in restrictions.tab: coming
+ * from one node along one road into the via node, traffic may not turn onto
+ * another road towards the last node.
+ */
+public class Restriction {
+	public final int fromNodeID, fromRoadID, viaNodeID, toRoadID, toNodeID;
+
+	public Restriction(int fromNodeID, int fromRoadID, int viaNodeID,
+			int toRoadID, int toNodeID) {
+		this.fromNodeID = fromNodeID;
+		this.fromRoadID = fromRoadID;
+		this.viaNodeID = viaNodeID;
+		this.toRoadID = toRoadID;
+		this.toNodeID = toNodeID;
+	}
+}
@@ -15,6 +15,15 @@ public class Road {
 	public final String name, city;
 	public final Collection<Segment> components;
 	public final int oneway;
+	// speed limit and road class categories, and 1 for each kind of traffic
+	// the road is not for, as in the data files.
+	public final int speed, roadclass;
+	public final int notforcar, notforpede, notforbicy;
+
+	// the speed limit in km/h for each speed category. 7 is "no limit", which
+	// we take as a little over the fastest posted limit.
+	private static final double[] SPEED_LIMITS = { 5, 20, 40, 60, 80, 100,
+			110, 120 };
 
 	public Road(int roadID, int type, String label, String city, int oneway,
 			int speed, int roadclass, int notforcar, int notforpede,
@@ -24,6 +33,28 @@ public class Road {
 		this.name = label;
 		this.components = new HashSet<Segment>();
 		this.oneway = oneway;
+		this.speed = speed;
+		this.roadclass = roadclass;
+		this.notforcar = notforcar;
+		this.notforpede = notforpede;
+		this.notforbicy = notforbicy;
+	}
+
+	/**
+	 * Returns the speed limit in km/h.
+	 */
+	public double getSpeedLimit() {
+		return speedLimit(speed);
+	}
+
+	/**
+	 * Returns the speed limit in km/h for a speed category, treating unknown
+	 * categories as the slowest.
+	 */
+	public static double speedLimit(int category) {
+		if (category < 0 || category >= SPEED_LIMITS.length)
+			return SPEED_LIMITS[0];
+		return SPEED_LIMITS[category];
 	}
 
 	public void addSegment(Segment seg) {
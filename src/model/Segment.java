@@ -1,15 +1,15 @@
 package model;
 
 import java.awt.Graphics;
-import java.awt.Point;
 
 import util.Location;
 
 /**
  * A Segment is the most interesting class making up our graph, and represents
  * an edge between two Nodes. It knows the Road it belongs to as well as the
- * Nodes it joins, and contains a series of Locations that make up the length of
- * the Segment and can be used to render it.
+ * Nodes it joins, and contains a series of points that make up the length of
+ * the Segment and can be used to render it. The points live in a Geometry
+ * shared by all the segments; the segment just knows which ones are its own.
  * 
  * @author Tony Butler-Yeoman
  */
@@ -18,22 +18,39 @@ public class Segment {
 	public final Road road;
 	public final Node start, end;
 	public final double length;
-	public final Location[] points;
+	public final Geometry geometry;
+	public final int firstPoint, pointCount;
 
+	/**
+	 * Makes a segment from a line of the segments file, looking up its road
+	 * and nodes in the graph. Its points must already be in the geometry.
+	 * This doesn't touch the road or nodes; call link once the segment should
+	 * become part of the graph.
+	 */
 	public Segment(Graph graph, int roadID, double length, int node1ID,
-			int node2ID, double[] coords) {
+			int node2ID, Geometry geometry, int firstPoint, int pointCount) {
+		this(graph.getRoads().get(roadID), length, graph.getNodes().get(
+				node1ID), graph.getNodes().get(node2ID), geometry, firstPoint,
+				pointCount);
+	}
 
-		this.road = graph.getRoads().get(roadID);
-		this.start = graph.getNodes().get(node1ID);
-		this.end = graph.getNodes().get(node2ID);
+	public Segment(Road road, double length, Node end, Node start,
+			Geometry geometry, int firstPoint, int pointCount) {
+		this.road = road;
+		this.start = end;
+		this.end = start;
 		this.length = length;
+		this.geometry = geometry;
+		this.firstPoint = firstPoint;
+		this.pointCount = pointCount;
+	}
 
-		points = new Location[coords.length / 2];
-		for (int i = 0; i < points.length; i++) {
-			points[i] = Location
-					.newFromLatLon(coords[2 * i], coords[2 * i + 1]);
-		}
-
+	/**
+	 * Adds this segment to its road and both its nodes, wiring up the
+	 * neighbour and exit/enter sets. Two-way roads also get a reversed copy
+	 * added in the other direction.
+	 */
+	public void link() {
 		this.road.addSegment(this);
 		this.start.addSegment(this);
 		this.end.addSegment(this);
@@ -49,27 +66,41 @@ public class Segment {
 		}
 	}
 
-	public Segment(Road road, double length, Node end, Node start,
-			Location[] points) {
-		this.road = road;
-		this.start = end;
-		this.end = start;
-		this.length = length;
-		this.points = points;
-	}
-
+	/**
+	 * Returns a copy of this segment going the other way. It shares this
+	 * segment's points, which are still in this segment's order.
+	 */
 	public Segment reverseWay() {
-		Segment seg = new Segment(road, length, end, start, points);
+		Segment seg = new Segment(road, length, end, start, geometry,
+				firstPoint, pointCount);
 		return seg;
 	}
 
 	public void draw(Graphics g, Location origin, double scale) {
-		for (int i = 1; i < points.length; i++) {
-			Point p = points[i - 1].asPoint(origin, scale);
-			Point q = points[i].asPoint(origin, scale);
-			g.drawLine(p.x, p.y, q.x, q.y);
+		if (pointCount < 2)
+			return;
+
+		// project straight out of the shared geometry; this is the same sum
+		// as Location.asPoint, without the Location or the Point.
+		int px = (int) ((geometry.getX(firstPoint) - origin.x) * scale);
+		int py = (int) ((origin.y - geometry.getY(firstPoint)) * scale);
+		for (int i = firstPoint + 1; i < firstPoint + pointCount; i++) {
+			int qx = (int) ((geometry.getX(i) - origin.x) * scale);
+			int qy = (int) ((origin.y - geometry.getY(i)) * scale);
+			g.drawLine(px, py, qx, qy);
+			px = qx;
+			py = qy;
 		}
 	}
+
+	/**
+	 * Returns the i'th point of this segment as a new Location. This
+	 * allocates, so keep it out of loops that run every frame.
+	 */
+	public Location getPoint(int i) {
+		return new Location(geometry.getX(firstPoint + i),
+				geometry.getY(firstPoint + i));
+	}
 	
 	@Override
 	public String toString() {
@@ -88,4 +119,4 @@ public class Segment {
 	public double getLength() {
 		return length;
 	}
-}
\ No newline at end of file
+}
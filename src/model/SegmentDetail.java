@@ -0,0 +1,185 @@
+package model;
+
+import java.awt.Graphics;
+import java.util.Arrays;
+
+import util.Location;
+
+/**
+ * Simplified copies of the segments' geometry, for drawing the map zoomed
+ * out, where most of a road's points would land on the same pixel. Each level
+ * keeps the points Douglas-Peucker picks at that level's tolerance (so no
+ * dropped point is further than the tolerance from the line drawn). The ends
+ * of a segment are always kept, so the roads still join up. Level 0 is the
+ * full geometry.
+ *
+ * The kept points are packed a level at a time, segment by segment in the
+ * SegmentTree's order: for entry i at level l the point indices (into the
+ * shared Geometry) are points[l][offsets[l][i]] up to
+ * points[l][offsets[l][i + 1] - 1].
+ *
+ * Zoomed out past the scale the map opens at, minor roads are left out
+ * altogether, and so are the nodes; see isShown and areNodesShown.
+ */
+public class SegmentDetail {
+
+	// the most a simplified line may stray from the real one, in kilometres,
+	// at each level.
+	private static final double[] TOLERANCES = { 0, 0.01, 0.04, 0.16, 0.64 };
+	// how far off a line can be drawn, in pixels, before it shows.
+	private static final double PIXEL_TOLERANCE = 1;
+	// the scale each road class is drawn from; classes past the end always
+	// are. Everything is drawn at the scale the map opens at (1).
+	private static final double[] CLASS_SCALES = { 0.6, 0.4 };
+
+	private final SegmentTree tree;
+	private final int[][] offsets, points;
+
+	public SegmentDetail(SegmentTree tree) {
+		this.tree = tree;
+		int n = tree.size();
+		offsets = new int[TOLERANCES.length][];
+		points = new int[TOLERANCES.length][];
+
+		// level 0 is every point.
+		offsets[0] = new int[n + 1];
+		for (int i = 0; i < n; i++)
+			offsets[0][i + 1] = offsets[0][i] + tree.get(i).pointCount;
+		points[0] = new int[offsets[0][n]];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < tree.get(i).pointCount; j++)
+				points[0][offsets[0][i] + j] = tree.get(i).firstPoint + j;
+
+		boolean[] keep = new boolean[0];
+		int[] stack = new int[0];
+		for (int l = 1; l < TOLERANCES.length; l++) {
+			int[] kept = new int[points[0].length];
+			offsets[l] = new int[n + 1];
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				int from = offsets[0][i], to = offsets[0][i + 1];
+				if (keep.length < to - from) {
+					keep = new boolean[to - from];
+					stack = new int[2 * (to - from)];
+				}
+				simplify(tree.get(i).geometry, points[0], from, to,
+						TOLERANCES[l], keep, stack);
+				for (int j = from; j < to; j++)
+					if (keep[j - from])
+						kept[count++] = points[0][j];
+				offsets[l][i + 1] = count;
+			}
+			points[l] = Arrays.copyOf(kept, count);
+		}
+	}
+
+	/**
+	 * Returns the coarsest level that's still accurate to within a pixel or
+	 * so at the given scale (pixels per kilometre).
+	 */
+	public static int levelFor(double scale) {
+		int level = 0;
+		while (level + 1 < TOLERANCES.length
+				&& TOLERANCES[level + 1] * scale <= PIXEL_TOLERANCE)
+			level++;
+		return level;
+	}
+
+	/**
+	 * Returns whether roads of the road's class are drawn at the given scale.
+	 */
+	public static boolean isShown(Road road, double scale) {
+		return road.roadclass < 0 || road.roadclass >= CLASS_SCALES.length
+				|| scale >= CLASS_SCALES[road.roadclass];
+	}
+
+	/**
+	 * Returns whether the nodes are drawn at the given scale: only while
+	 * every road is, so there are no dots left floating where the roads
+	 * they join aren't drawn.
+	 */
+	public static boolean areNodesShown(double scale) {
+		return CLASS_SCALES.length == 0 || scale >= CLASS_SCALES[0];
+	}
+
+	/**
+	 * Returns how many points the entry has at the given level.
+	 */
+	public int getPointCount(int level, int entry) {
+		return offsets[level][entry + 1] - offsets[level][entry];
+	}
+
+	/**
+	 * Draws the SegmentTree entry at the given level of detail, the same way
+	 * Segment.draw does.
+	 */
+	public void draw(Graphics g, int level, int entry, Location origin,
+			double scale) {
+		int from = offsets[level][entry], to = offsets[level][entry + 1];
+		if (to - from < 2)
+			return;
+		Geometry geometry = tree.get(entry).geometry;
+		int[] kept = points[level];
+		int px = (int) ((geometry.getX(kept[from]) - origin.x) * scale);
+		int py = (int) ((origin.y - geometry.getY(kept[from])) * scale);
+		for (int i = from + 1; i < to; i++) {
+			int qx = (int) ((geometry.getX(kept[i]) - origin.x) * scale);
+			int qy = (int) ((origin.y - geometry.getY(kept[i])) * scale);
+			// lines shorter than a pixel don't show.
+			if (qx == px && qy == py && i < to - 1)
+				continue;
+			g.drawLine(px, py, qx, qy);
+			px = qx;
+			py = qy;
+		}
+	}
+
+	/**
+	 * Douglas-Peucker over points[from] up to points[to - 1], marking in keep
+	 * (indexed from 0) the ones to keep. Each span between two kept points
+	 * keeps its furthest point from the line between them, if that's further
+	 * than the tolerance, and is then split in two there. The spans still to
+	 * do go on the stack, as pairs, rather than recursing.
+	 */
+	private static void simplify(Geometry geometry, int[] points, int from,
+			int to, double tolerance, boolean[] keep, int[] stack) {
+		int n = to - from;
+		Arrays.fill(keep, 0, n, false);
+		if (n == 0)
+			return;
+		keep[0] = keep[n - 1] = true;
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = n - 1;
+		while (top > 0) {
+			int last = stack[--top], first = stack[--top];
+			double ax = geometry.getX(points[from + first]);
+			double ay = geometry.getY(points[from + first]);
+			double dx = geometry.getX(points[from + last]) - ax;
+			double dy = geometry.getY(points[from + last]) - ay;
+			double lengthSquared = dx * dx + dy * dy;
+
+			int furthest = -1;
+			double furthestDistance = tolerance;
+			for (int i = first + 1; i < last; i++) {
+				double px = geometry.getX(points[from + i]) - ax;
+				double py = geometry.getY(points[from + i]) - ay;
+				// distance to the line segment, not the infinite line.
+				double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1,
+						(px * dx + py * dy) / lengthSquared));
+				double distance = Math.hypot(px - t * dx, py - t * dy);
+				if (distance > furthestDistance) {
+					furthest = i;
+					furthestDistance = distance;
+				}
+			}
+			if (furthest < 0)
+				continue;
+			keep[furthest] = true;
+			stack[top++] = first;
+			stack[top++] = furthest;
+			stack[top++] = furthest;
+			stack[top++] = last;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import util.Location;
+
+/**
+ * An R-tree over the bounding boxes of the segments, for finding the ones in
+ * a window (the part of the map on screen) without looking at all of them.
+ *
+ * It's built once and never changes, so it's bulk loaded with Sort-Tile-
+ * Recursive packing: the boxes are sorted by the x of their centres and cut
+ * into vertical slices, each slice is sorted by y, and then runs of FAN_OUT
+ * boxes make the leaves, so each leaf covers a small, squarish patch of the
+ * map. Each level above groups runs of FAN_OUT of the level below, up to a
+ * single root.
+ *
+ * All the levels are packed into one set of box arrays, leaves (the segments
+ * themselves) first, so node i of a level has children FAN_OUT * i up to
+ * FAN_OUT * (i + 1) - 1 of the level below, and there are no node objects.
+ */
+public class SegmentTree {
+
+	private static final int FAN_OUT = 16;
+
+	// the segments in packed order.
+	private final Segment[] segments;
+	// bounding boxes of every entry of every level; level l starts at
+	// levelStarts[l], and levelStarts[levels] is the total.
+	private final double[] minXs, minYs, maxXs, maxYs;
+	private final int[] levelStarts;
+	private final int levels;
+
+	public SegmentTree(Collection<Segment> segmentCollection) {
+		Segment[] original = segmentCollection.toArray(new Segment[0]);
+		int n = original.length;
+		final double[][] boxes = new double[n][];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			boxes[i] = bounds(original[i]);
+			order[i] = i;
+		}
+
+		// sort-tile-recursive: by x centre, then each vertical slice by y.
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(boxes[a][0] + boxes[a][2], boxes[b][0]
+						+ boxes[b][2]);
+			}
+		});
+		int leaves = (n + FAN_OUT - 1) / FAN_OUT;
+		int slices = Math.max(1, (int) Math.ceil(Math.sqrt(leaves)));
+		int sliceSize = (leaves + slices - 1) / slices * FAN_OUT;
+		Comparator<Integer> byY = new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(boxes[a][1] + boxes[a][3], boxes[b][1]
+						+ boxes[b][3]);
+			}
+		};
+		for (int start = 0; start < n; start += sliceSize)
+			Arrays.sort(order, start, Math.min(start + sliceSize, n), byY);
+		segments = new Segment[n];
+		for (int i = 0; i < n; i++)
+			segments[i] = original[order[i]];
+
+		// count the levels, and where each starts.
+		List<Integer> starts = new ArrayList<Integer>();
+		int total = 0;
+		for (int size = n;; size = (size + FAN_OUT - 1) / FAN_OUT) {
+			starts.add(total);
+			total += size;
+			if (size <= 1)
+				break;
+		}
+		starts.add(total);
+		levels = starts.size() - 1;
+		levelStarts = new int[starts.size()];
+		for (int l = 0; l < starts.size(); l++)
+			levelStarts[l] = starts.get(l);
+
+		minXs = new double[total];
+		minYs = new double[total];
+		maxXs = new double[total];
+		maxYs = new double[total];
+		for (int i = 0; i < n; i++) {
+			double[] box = boxes[order[i]];
+			minXs[i] = box[0];
+			minYs[i] = box[1];
+			maxXs[i] = box[2];
+			maxYs[i] = box[3];
+		}
+		// each node's box is the union of its children's.
+		for (int l = 1; l < levels; l++) {
+			int below = levelStarts[l - 1], end = levelStarts[l];
+			for (int node = levelStarts[l]; node < levelStarts[l + 1]; node++) {
+				int first = below + (node - levelStarts[l]) * FAN_OUT;
+				minXs[node] = minYs[node] = Double.POSITIVE_INFINITY;
+				maxXs[node] = maxYs[node] = Double.NEGATIVE_INFINITY;
+				for (int c = first; c < Math.min(first + FAN_OUT, end); c++) {
+					minXs[node] = Math.min(minXs[node], minXs[c]);
+					minYs[node] = Math.min(minYs[node], minYs[c]);
+					maxXs[node] = Math.max(maxXs[node], maxXs[c]);
+					maxYs[node] = Math.max(maxYs[node], maxYs[c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the entries (see get) of the segments whose bounding boxes
+	 * overlap the window.
+	 */
+	public int[] query(double minX, double minY, double maxX, double maxY) {
+		int[] found = new int[64];
+		int count = 0;
+		if (segments.length == 0)
+			return new int[0];
+
+		// depth first from the root, with an explicit stack of (level, entry)
+		// pairs; it never holds more than FAN_OUT entries per level.
+		int[] stackLevels = new int[levels * FAN_OUT + 1];
+		int[] stackEntries = new int[levels * FAN_OUT + 1];
+		int top = 0;
+		stackLevels[top] = levels - 1;
+		stackEntries[top++] = levelStarts[levels - 1];
+		while (top > 0) {
+			int level = stackLevels[--top], entry = stackEntries[top];
+			if (minXs[entry] > maxX || maxXs[entry] < minX
+					|| minYs[entry] > maxY || maxYs[entry] < minY)
+				continue;
+			if (level == 0) {
+				if (count == found.length)
+					found = Arrays.copyOf(found, count * 2);
+				found[count++] = entry;
+				continue;
+			}
+			int below = levelStarts[level - 1];
+			int first = below + (entry - levelStarts[level]) * FAN_OUT;
+			int last = Math.min(first + FAN_OUT, levelStarts[level]);
+			// pushed backwards so they come off the stack in order.
+			for (int c = last - 1; c >= first; c--) {
+				stackLevels[top] = level - 1;
+				stackEntries[top++] = c;
+			}
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Returns the segment at the given entry. Entries number the segments
+	 * 0 up to size() - 1 in the tree's packed order.
+	 */
+	public Segment get(int entry) {
+		return segments[entry];
+	}
+
+	public int size() {
+		return segments.length;
+	}
+
+	private static double[] bounds(Segment segment) {
+		double[] box = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		Geometry geometry = segment.geometry;
+		for (int i = segment.firstPoint; i < segment.firstPoint
+				+ segment.pointCount; i++) {
+			box[0] = Math.min(box[0], geometry.getX(i));
+			box[1] = Math.min(box[1], geometry.getY(i));
+			box[2] = Math.max(box[2], geometry.getX(i));
+			box[3] = Math.max(box[3], geometry.getY(i));
+		}
+		if (segment.pointCount == 0) {
+			// no points to draw; fall back to the ends.
+			Location a = segment.start.location, b = segment.end.location;
+			box[0] = Math.min(a.x, b.x);
+			box[1] = Math.min(a.y, b.y);
+			box[2] = Math.max(a.x, b.x);
+			box[3] = Math.max(a.y, b.y);
+		}
+		return box;
+	}
+}
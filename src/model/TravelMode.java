@@ -0,0 +1,87 @@
+package model;
+
+/**
+ * The kinds of traffic a route can be for. Each has a bit in
+ * CompactGraph.edgeAccess, set on the edges it's allowed to use, so searches
+ * can filter edges with a single mask test. ANY has no bits, so it allows
+ * every edge, as routing did before the modes were added.
+ *
+ * One-way roads are only one-way for cars. Walkers and cyclists may also go
+ * along the edges of a one-way road backwards, from its target to its
+ * source; each has a second bit, againstMask, set on the one-way edges it's
+ * allowed on, and the searches walk the reverse arrays for those. A route
+ * can then use an edge either way, so follow it by the ends the edges share
+ * (see CompactGraph.otherEnd) rather than by sources and targets.
+ *
+ * Each mode also has a top speed, so that fastest routes for walking and
+ * cycling are timed at walking and cycling pace rather than at the speed
+ * limit; see Weighting.
+ */
+public enum TravelMode {
+	ANY(0, 0, Double.POSITIVE_INFINITY), CAR(1, 0, Double.POSITIVE_INFINITY),
+	PEDESTRIAN(2, 8, 5), BICYCLE(4, 16, 18);
+
+	public final int mask;
+	// the bit for going against a one-way edge; 0 for modes that can't.
+	public final int againstMask;
+	// in km/h; infinite for modes that go at the speed limit.
+	public final double speed;
+
+	private TravelMode(int mask, int againstMask, double speed) {
+		this.mask = mask;
+		this.againstMask = againstMask;
+		this.speed = speed;
+	}
+
+	/**
+	 * Returns how fast this mode goes on a road with the given speed limit,
+	 * in km/h.
+	 */
+	public double speedOn(double speedLimit) {
+		return Math.min(speedLimit, speed);
+	}
+
+	/**
+	 * Returns true if an edge with the given access bits allows this mode.
+	 */
+	public boolean allows(int access) {
+		return (access & mask) == mask;
+	}
+
+	/**
+	 * Returns true if this mode can go against some one-way roads, so
+	 * searches for it need to look at the reverse edges too.
+	 */
+	public boolean goesAgainstOneWay() {
+		return againstMask != 0;
+	}
+
+	/**
+	 * Returns true if an edge with the given access bits may be gone along
+	 * backwards by this mode.
+	 */
+	public boolean allowsAgainst(int access) {
+		return (access & againstMask) != 0;
+	}
+
+	/**
+	 * Returns the access bits for a road: a bit for every mode allowed on it.
+	 */
+	public static int accessOf(Road road) {
+		int access = 0;
+		if (road.notforcar == 0)
+			access |= CAR.mask;
+		if (road.notforpede == 0)
+			access |= PEDESTRIAN.mask;
+		if (road.notforbicy == 0)
+			access |= BICYCLE.mask;
+		// walkers and cyclists can go either way along one-way roads.
+		if (road.oneway != 0) {
+			if (road.notforpede == 0)
+				access |= PEDESTRIAN.againstMask;
+			if (road.notforbicy == 0)
+				access |= BICYCLE.againstMask;
+		}
+		return access;
+	}
+}
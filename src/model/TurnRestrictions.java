@@ -0,0 +1,211 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import util.LongSet;
+
+/**
+ * The forbidden turns of a CompactGraph, as pairs of edges: a turn from edge
+ * in to edge out (where out leaves the node in enters) is forbidden if the
+ * pair is in the set. Pairs are packed into a long, in the high half and out
+ * in the low half, and kept in a LongSet.
+ *
+ * Very few edges lead into a forbidden turn, so there's also a flag per edge
+ * saying whether it does. Searches test the flag first, and only the odd
+ * flagged edge costs a hash lookup.
+ */
+public class TurnRestrictions {
+
+	// how many nodes to look through, following a road from the via node to
+	// the node a restriction names, before giving up.
+	private static final int MAX_WALK = 10000;
+
+	private final LongSet forbidden;
+	private final boolean[] restricted;
+	private int unresolved;
+
+	/**
+	 * Works out the forbidden edge pairs for the given restrictions. A
+	 * restriction whose via node isn't in the graph (say, one for some other
+	 * part of the map) is ignored. One whose roads can't be pinned down to
+	 * an edge each side of the via node is skipped too, and counted as
+	 * unresolved, rather than guessed at.
+	 */
+	public TurnRestrictions(CompactGraph graph,
+			Collection<Restriction> restrictions) {
+		forbidden = new LongSet(restrictions.size());
+		restricted = new boolean[graph.edgeCount];
+
+		for (Restriction restriction : restrictions) {
+			int via = indexOf(graph, restriction.viaNodeID);
+			if (via < 0)
+				continue;
+			int[] ins = edgesAt(graph, via, restriction.fromRoadID,
+					indexOf(graph, restriction.fromNodeID), true);
+			int[] outs = edgesAt(graph, via, restriction.toRoadID,
+					indexOf(graph, restriction.toNodeID), false);
+			if (ins.length == 0 || outs.length == 0) {
+				unresolved++;
+				continue;
+			}
+			for (int in : ins) {
+				for (int out : outs) {
+					forbidden.add(pack(in, out));
+					restricted[in] = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if going along the in edge and then the out edge is a
+	 * forbidden turn.
+	 */
+	public boolean isForbidden(int in, int out) {
+		return restricted[in] && forbidden.contains(pack(in, out));
+	}
+
+	/**
+	 * Returns true if any turn off the end of the edge is forbidden.
+	 */
+	public boolean isRestricted(int edge) {
+		return restricted[edge];
+	}
+
+	/**
+	 * Returns how many turns (edge pairs) are forbidden.
+	 */
+	public int size() {
+		return forbidden.size();
+	}
+
+	/**
+	 * Returns how many restrictions were skipped because their roads
+	 * couldn't be matched to edges at the via node.
+	 */
+	public int getUnresolvedCount() {
+		return unresolved;
+	}
+
+	/**
+	 * Returns the edges on the road into (or out of) the via node from (or
+	 * to) the named node. That's normally the next node along the road, so
+	 * the edges go straight to it. If none do, the road is followed from the
+	 * named node back towards the via node, and the edges to the neighbour
+	 * it first arrives at are the ones. Returns no edges if that doesn't
+	 * settle it: the node isn't known, can't be reached along the road, or
+	 * two neighbours are equally near it.
+	 */
+	private static int[] edgesAt(CompactGraph graph, int via, int roadID,
+			int node, boolean in) {
+		if (node < 0 || node == via)
+			return new int[0];
+		int[] offsets = in ? graph.reverseOffsets : graph.offsets;
+		int[] onRoad = new int[offsets[via + 1] - offsets[via]];
+		int[] ends = new int[onRoad.length];
+		int count = 0, direct = 0;
+		for (int i = offsets[via]; i < offsets[via + 1]; i++) {
+			int e = in ? graph.reverseEdges[i] : i;
+			if (graph.roads[graph.edgeRoads[e]].roadID != roadID)
+				continue;
+			ends[count] = in ? graph.sources[e] : graph.targets[e];
+			onRoad[count++] = e;
+			if (ends[count - 1] == node)
+				direct++;
+		}
+		int end = direct > 0 ? node : nearestAlongRoad(graph, via, roadID,
+				node, ends, count);
+		if (end < 0)
+			return new int[0];
+
+		int kept = 0;
+		for (int i = 0; i < count; i++)
+			if (ends[i] == end)
+				onRoad[kept++] = onRoad[i];
+		return Arrays.copyOf(onRoad, kept);
+	}
+
+	/**
+	 * A breadth first search along the road (either way along its edges)
+	 * from the named node, not going through the via node, for the first of
+	 * the via node's neighbours (ends[0] up to ends[count - 1]) it reaches.
+	 * Returns -1 if it reaches none, or two at the same distance.
+	 */
+	private static int nearestAlongRoad(CompactGraph graph, int via,
+			int roadID, int node, int[] ends, int count) {
+		Set<Integer> targets = new HashSet<Integer>();
+		for (int i = 0; i < count; i++)
+			targets.add(ends[i]);
+		Set<Integer> seen = new HashSet<Integer>();
+		seen.add(via);
+		seen.add(node);
+		int[] level = { node };
+		while (level.length > 0 && seen.size() < MAX_WALK) {
+			int found = -1;
+			int[] next = new int[0];
+			int size = 0;
+			for (int current : level) {
+				if (targets.contains(current)) {
+					if (found >= 0 && found != current)
+						return -1;
+					found = current;
+				}
+				for (int neighbour : roadNeighbours(graph, current, roadID)) {
+					if (!seen.add(neighbour))
+						continue;
+					if (size == next.length)
+						next = Arrays.copyOf(next, size * 2 + 4);
+					next[size++] = neighbour;
+				}
+			}
+			if (found >= 0)
+				return found;
+			level = Arrays.copyOf(next, size);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the nodes joined to the given one by an edge (either way) on
+	 * the road.
+	 */
+	private static int[] roadNeighbours(CompactGraph graph, int node,
+			int roadID) {
+		int outs = graph.offsets[node + 1] - graph.offsets[node];
+		int ins = graph.reverseOffsets[node + 1] - graph.reverseOffsets[node];
+		int[] neighbours = new int[outs + ins];
+		int count = 0;
+		for (int e = graph.offsets[node]; e < graph.offsets[node + 1]; e++)
+			if (graph.roads[graph.edgeRoads[e]].roadID == roadID)
+				neighbours[count++] = graph.targets[e];
+		for (int i = graph.reverseOffsets[node]; i < graph.reverseOffsets[node
+				+ 1]; i++) {
+			int e = graph.reverseEdges[i];
+			if (graph.roads[graph.edgeRoads[e]].roadID == roadID)
+				neighbours[count++] = graph.sources[e];
+		}
+		return Arrays.copyOf(neighbours, count);
+	}
+
+	private static int indexOf(CompactGraph graph, int nodeID) {
+		int lo = 0, hi = graph.nodeCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int id = graph.nodes[mid].nodeID;
+			if (id < nodeID)
+				lo = mid + 1;
+			else if (id > nodeID)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	private static long pack(int in, int out) {
+		return (long) in << 32 | out;
+	}
+}
@@ -82,6 +82,14 @@ public abstract class GUI {
 	
 	protected abstract void removeArtPoints();
 
+	/**
+	 * show what can be reached from the selected node, returning whether
+	 * there was one to show it for (if not, the button is let up again)
+	 */
+	protected abstract boolean displayServiceArea();
+
+	protected abstract void removeServiceArea();
+
 	/**
 	 * Is called whenever a navigation button is pressed. An instance of the
 	 * Move enum is passed, representing the button clicked by the user.
@@ -94,9 +102,9 @@ public abstract class GUI {
 
 	/**
 	 * Is called when the user has successfully selected a directory to load the
-	 * data files from. File objects representing the four files of interested
-	 * are passed to the method. The fourth File, polygons, might be null if it
-	 * isn't present in the directory.
+	 * data files from. File objects representing the five files of interest
+	 * are passed to the method. The last two, polygons and restrictions,
+	 * might be null if they aren't present in the directory.
 	 * 
 	 * @param nodes
 	 *            a File for nodeID-lat-lon.tab
@@ -106,9 +114,11 @@ public abstract class GUI {
 	 *            a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
 	 * @param polygons
 	 *            a File for polygon-shapes.mp
+	 * @param restrictions
+	 *            a File for restrictions.tab, or null if there isn't one
 	 */
 	protected abstract void onLoad(File nodes, File roads, File segments,
-			File polygons);
+			File polygons, File restrictions);
 
 
 	// here are some useful methods you'll need.
@@ -161,6 +171,7 @@ public abstract class GUI {
 	private static final String ROADS_FILENAME = "roadID-roadInfo.tab";
 	private static final String SEGS_FILENAME = "roadSeg-roadID-length-nodeID-nodeID-coords.tab";
 	private static final String POLYS_FILENAME = "polygon-shapes.mp";
+	private static final String RESTRICTIONS_FILENAME = "restrictions.tab";
 
 	/*
 	 * In Swing, everything is a component; buttons, graphics panes, tool tips,
@@ -188,6 +199,7 @@ public abstract class GUI {
 	private JButton setEndNodeButton;
 	private JButton findPathButton;
 	private JToggleButton calculateArtPointsButton;
+	private JToggleButton serviceAreaButton;
 
 	public GUI() {
 		initialise();
@@ -217,6 +229,7 @@ public abstract class GUI {
 		load.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent ev) {
 				File nodes = null, roads = null, segments = null, polygons = null;
+				File restrictions = null;
 
 				// set up the file chooser
 				fileChooser.setCurrentDirectory(new File("."));
@@ -239,6 +252,8 @@ public abstract class GUI {
 							segments = f;
 						} else if (f.getName().equals(POLYS_FILENAME)) {
 							polygons = f;
+						} else if (f.getName().equals(RESTRICTIONS_FILENAME)) {
+							restrictions = f;
 						}
 					}
 
@@ -249,7 +264,7 @@ public abstract class GUI {
 								"Directory does not contain correct files",
 								"Error", JOptionPane.ERROR_MESSAGE);
 					} else {
-						onLoad(nodes, roads, segments, polygons);
+						onLoad(nodes, roads, segments, polygons, restrictions);
 						redraw();
 					}
 				}
@@ -365,6 +380,19 @@ public abstract class GUI {
 			}
 		});
 
+		serviceAreaButton = new JToggleButton("Service Area");
+		serviceAreaButton.addItemListener(new ItemListener() {
+			public void itemStateChanged(ItemEvent ev) {
+				if (ev.getStateChange() == ItemEvent.SELECTED) {
+					if (!displayServiceArea())
+						serviceAreaButton.setSelected(false);
+				} else if (ev.getStateChange() == ItemEvent.DESELECTED) {
+					removeServiceArea();
+				}
+				redraw();
+			}
+		});
+
 		/*
 		 * next, make the top bar itself and arrange everything inside of it.
 		 */
@@ -425,6 +453,8 @@ public abstract class GUI {
 		controls.add(findPathButton);
 		controls.add(Box.createRigidArea(new Dimension(5, 0)));
 		controls.add(calculateArtPointsButton);
+		controls.add(Box.createRigidArea(new Dimension(5, 0)));
+		controls.add(serviceAreaButton);
 
 		/*
 		 * then make the drawing canvas, which is really just a boring old
@@ -0,0 +1,189 @@
+package util;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An IntMap maps ints to objects using open addressing: the keys live in one
+ * int array and the values in a parallel Object array, probed linearly from
+ * the key's hash. Looking up or adding an int key doesn't box it or make an
+ * entry object, unlike a HashMap<Integer, V>.
+ *
+ * It is still a Map<Integer, V>, so it can be handed to anything that wants
+ * one, but the int versions of get, put and containsKey are the fast ones.
+ * Null values and removal aren't supported.
+ */
+public class IntMap<V> extends AbstractMap<Integer, V> {
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+	// keys.length - 1; the capacity is always a power of two.
+	private int mask;
+
+	public IntMap() {
+		this(16);
+	}
+
+	/**
+	 * Makes a map that can hold the given number of entries before it needs
+	 * to grow.
+	 */
+	public IntMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected * 2, 4) - 1) << 1;
+		keys = new int[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int slot = slot(key);
+		return (V) values[slot];
+	}
+
+	public boolean containsKey(int key) {
+		return values[slot(key)] != null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null)
+			throw new NullPointerException("IntMap values can't be null");
+
+		int slot = slot(key);
+		V old = (V) values[slot];
+		keys[slot] = key;
+		values[slot] = value;
+		if (old == null && ++size * 2 > keys.length)
+			grow();
+		return old;
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			public Iterator<V> iterator() {
+				return new SlotIterator<V>() {
+					@SuppressWarnings("unchecked")
+					V at(int slot) {
+						return (V) values[slot];
+					}
+				};
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, V>>() {
+			public Iterator<Map.Entry<Integer, V>> iterator() {
+				return new SlotIterator<Map.Entry<Integer, V>>() {
+					@SuppressWarnings("unchecked")
+					Map.Entry<Integer, V> at(int slot) {
+						return new SimpleImmutableEntry<Integer, V>(
+								keys[slot], (V) values[slot]);
+					}
+				};
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the slot holding the given key, or the empty slot where it
+	 * would go.
+	 */
+	private int slot(int key) {
+		int slot = hash(key) & mask;
+		while (values[slot] != null && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Spreads the bits of the key about, as our IDs are mostly small and
+	 * clustered.
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int slot = slot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Walks the occupied slots in order.
+	 */
+	private abstract class SlotIterator<T> implements Iterator<T> {
+		private int next = advance(0);
+
+		abstract T at(int slot);
+
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			T result = at(next);
+			next = advance(next + 1);
+			return result;
+		}
+
+		private int advance(int slot) {
+			while (slot < values.length && values[slot] == null)
+				slot++;
+			return slot;
+		}
+	}
+}
+
+// code for COMP261 assignments
@@ -74,10 +74,23 @@ public class Location {
 	 * is the format used in the data files.
 	 */
 	public static Location newFromLatLon(double lat, double lon) {
-		double y = (lat - CENTRE_LAT) * SCALE_LAT;
-		double x = (lon - CENTRE_LON)
+		return new Location(xFromLatLon(lat, lon), yFromLatLon(lat));
+	}
+
+	/**
+	 * Returns the x coordinate of the given latitude and longitude, without
+	 * making a Location.
+	 */
+	public static double xFromLatLon(double lat, double lon) {
+		return (lon - CENTRE_LON)
 				* (SCALE_LAT * Math.cos((lat - CENTRE_LAT) * DEG_TO_RAD));
-		return new Location(x, y);
+	}
+
+	/**
+	 * Returns the y coordinate of the given latitude.
+	 */
+	public static double yFromLatLon(double lat) {
+		return (lat - CENTRE_LAT) * SCALE_LAT;
 	}
 
 	// ------------------------------------------
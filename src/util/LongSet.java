@@ -0,0 +1,86 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * A LongSet is a set of non-negative longs using open addressing, in the same
+ * way as IntMap: the keys live in one long array, probed linearly from the
+ * key's hash, with -1 marking an empty slot. Nothing is boxed, and a lookup
+ * is a hash and (almost always) one or two array reads.
+ */
+public class LongSet {
+
+	private static final long EMPTY = -1;
+
+	private long[] keys;
+	private int size;
+	// keys.length - 1; the capacity is always a power of two.
+	private int mask;
+
+	public LongSet() {
+		this(16);
+	}
+
+	/**
+	 * Makes a set that can hold the given number of keys before it needs to
+	 * grow.
+	 */
+	public LongSet(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected * 2, 4) - 1) << 1;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Adds the key, returning true if it wasn't already there.
+	 */
+	public boolean add(long key) {
+		if (key < 0)
+			throw new IllegalArgumentException("LongSet keys can't be negative");
+
+		int slot = slot(key);
+		if (keys[slot] == key)
+			return false;
+		keys[slot] = key;
+		if (++size * 2 > keys.length)
+			grow();
+		return true;
+	}
+
+	public boolean contains(long key) {
+		return keys[slot(key)] == key;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the slot holding the given key, or the empty slot where it
+	 * would go.
+	 */
+	private int slot(long key) {
+		int slot = hash(key) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		keys = new long[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		mask = keys.length - 1;
+		for (long key : oldKeys)
+			if (key != EMPTY)
+				keys[slot(key)] = key;
+	}
+}
+
+// code for COMP261 assignments
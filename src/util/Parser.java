@@ -1,53 +1,76 @@
 package util;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import model.Geometry;
 import model.Graph;
 import model.Node;
+import model.Restriction;
 import model.Road;
 import model.Segment;
 
 /**
- * This utility class provides three static methods for parsing each of the
- * three files we're interested in, and returning the relevant data structure.
- * Internally it uses BufferedReaders instead of Scanners to read in the files,
- * as Scanners are pathetically slow.
+ * This utility class provides static methods for parsing each of the files
+ * we're interested in, and returning the relevant data structure.
+ * Internally it uses a TabScanner instead of BufferedReaders and
+ * String.split, so numbers are parsed straight out of the file's bytes and the
+ * only Strings made are the road names and cities.
+ * 
+ * Each file can either be streamed through a buffer or memory-mapped, as set
+ * by the Mode passed in. In PARALLEL mode the node and segment files are also
+ * cut into newline-aligned chunks which are parsed at the same time on the
+ * common ForkJoinPool.
  * 
  * @author Tony Butler-Yeoman
  */
 public class Parser {
 
-	public static Map<Integer, Node> parseNodes(File nodes, Graph graph) {
-		Map<Integer, Node> map = new HashMap<Integer, Node>();
+	/**
+	 * How the files are read. STREAM reads each file through a small reusable
+	 * buffer, MAP memory-maps the whole file and parses it in place, and
+	 * PARALLEL memory-maps it and parses chunks of it on several threads.
+	 */
+	public enum Mode {
+		STREAM, MAP, PARALLEL
+	}
 
-		try {
-			// make a reader
-			BufferedReader br = new BufferedReader(new FileReader(nodes));
-			String line;
+	// chunks smaller than this aren't worth handing to another thread.
+	private static final int MIN_CHUNK_SIZE = 1 << 16;
+	// how many chunks to aim for per thread, to even out the load.
+	private static final int CHUNKS_PER_THREAD = 4;
 
-			// read in each line of the file
-			while ((line = br.readLine()) != null) {
-				// tokenise the line by splitting it at the tabs.
-				String[] tokens = line.split("[\t]+");
+	public static IntMap<Node> parseNodes(File nodes, Graph graph) {
+		return parseNodes(nodes, graph, Mode.STREAM);
+	}
 
-				// process the tokens
-				int nodeID = asInt(tokens[0]);
-				double lat = asDouble(tokens[1]);
-				double lon = asDouble(tokens[2]);
+	public static IntMap<Node> parseNodes(File nodes, Graph graph,
+			Mode mode) {
+		if (mode == Mode.PARALLEL)
+			return parseNodesInParallel(nodes);
 
-				Node node = new Node(nodeID, lat, lon);
-				map.put(nodeID, node);
+		IntMap<Node> map = new IntMap<Node>();
+
+		try {
+			// make a scanner
+			TabScanner scanner = open(nodes, mode);
+
+			// read in each line of the file
+			while (scanner.hasNextLine()) {
+				Node node = readNode(scanner);
+				map.put(node.nodeID, node);
 			}
 
-			br.close();
+			scanner.close();
 		} catch (IOException e) {
 			throw new RuntimeException("file reading failed.");
 		}
@@ -55,34 +78,37 @@ public class Parser {
 		return map;
 	}
 
-	public static Map<Integer, Road> parseRoads(File roads, Graph graph) {
-		Map<Integer, Road> map = new HashMap<Integer, Road>();
+	public static IntMap<Road> parseRoads(File roads, Graph graph) {
+		return parseRoads(roads, graph, Mode.STREAM);
+	}
+
+	public static IntMap<Road> parseRoads(File roads, Graph graph,
+			Mode mode) {
+		IntMap<Road> map = new IntMap<Road>();
 
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(roads));
-			br.readLine(); // throw away the top line of the file.
-			String line;
-
-			while ((line = br.readLine()) != null) {
-				String[] tokens = line.split("[\t]+");
-
-				int roadID = asInt(tokens[0]);
-				int type = asInt(tokens[1]);
-				String label = tokens[2];
-				String city = tokens[3];
-				int oneway = asInt(tokens[4]);
-				int speed = asInt(tokens[5]);
-				int roadclass = asInt(tokens[6]);
-				int notforcar = asInt(tokens[7]);
-				int notforpede = asInt(tokens[8]);
-				int notforbicy = asInt(tokens[8]);
+			TabScanner scanner = open(roads, mode);
+			scanner.skipLine(); // throw away the top line of the file.
+
+			while (scanner.hasNextLine()) {
+				int roadID = scanner.nextInt();
+				int type = scanner.nextInt();
+				String label = scanner.nextString();
+				String city = scanner.nextString();
+				int oneway = scanner.nextInt();
+				int speed = scanner.nextInt();
+				int roadclass = scanner.nextInt();
+				int notforcar = scanner.nextInt();
+				int notforpede = scanner.nextInt();
+				int notforbicy = scanner.nextInt();
+				scanner.skipLine();
 
 				Road road = new Road(roadID, type, label, city, oneway, speed,
 						roadclass, notforcar, notforpede, notforbicy);
 				map.put(roadID, road);
 			}
 
-			br.close();
+			scanner.close();
 		} catch (IOException e) {
 			throw new RuntimeException("file reading failed.");
 		}
@@ -90,32 +116,69 @@ public class Parser {
 		return map;
 	}
 
-	public static Collection<Segment> parseSegments(File segments, Graph graph) {
-		Set<Segment> set = new HashSet<Segment>();
+	/**
+	 * Parses the turn restrictions. The file is small, so it's always just
+	 * streamed.
+	 */
+	public static List<Restriction> parseRestrictions(File restrictions) {
+		List<Restriction> list = new ArrayList<Restriction>();
 
 		try {
-			BufferedReader br = new BufferedReader(new FileReader(segments));
-			br.readLine(); // throw away the top line of the file.
-			String line;
+			TabScanner scanner = open(restrictions, Mode.STREAM);
+			scanner.skipLine(); // throw away the top line of the file.
+
+			while (scanner.hasNextLine()) {
+				int fromNodeID = scanner.nextInt();
+				int fromRoadID = scanner.nextInt();
+				int viaNodeID = scanner.nextInt();
+				int toRoadID = scanner.nextInt();
+				int toNodeID = scanner.nextInt();
+				scanner.skipLine();
 
-			while ((line = br.readLine()) != null) {
-				String[] tokens = line.split("[\t]+");
+				list.add(new Restriction(fromNodeID, fromRoadID, viaNodeID,
+						toRoadID, toNodeID));
+			}
 
-				int roadID = asInt(tokens[0]);
-				double length = asDouble(tokens[1]);
-				int node1ID = asInt(tokens[2]);
-				int node2ID = asInt(tokens[3]);
+			scanner.close();
+		} catch (IOException e) {
+			throw new RuntimeException("file reading failed.");
+		}
 
-				double[] coords = new double[tokens.length - 4];
-				for (int i = 4; i < tokens.length; i++)
-					coords[i - 4] = asDouble(tokens[i]);
+		return list;
+	}
 
-				Segment segment = new Segment(graph, roadID, length, node1ID,
-						node2ID, coords);
+	/**
+	 * Parses the segments, which must come after the nodes and roads they
+	 * refer to have been put in the graph, and links each one into the graph.
+	 */
+	public static Collection<Segment> parseSegments(File segments, Graph graph) {
+		return parseSegments(segments, graph, Mode.STREAM);
+	}
+
+	public static Collection<Segment> parseSegments(File segments,
+			Graph graph, Mode mode) {
+		if (mode == Mode.PARALLEL)
+			return parseSegmentsInParallel(segments, graph);
+
+		Set<Segment> set = new HashSet<Segment>();
+
+		try {
+			TabScanner scanner = open(segments, mode);
+			scanner.skipLine(); // throw away the top line of the file.
+
+			// every segment's points go into the one geometry.
+			Geometry geometry = new Geometry(1 << 12);
+			int points = 0;
+
+			while (scanner.hasNextLine()) {
+				Segment segment = readSegment(scanner, graph, geometry, points);
+				segment.link();
 				set.add(segment);
+				points += segment.pointCount;
 			}
+			geometry.trim(points);
 
-			br.close();
+			scanner.close();
 		} catch (IOException e) {
 			throw new RuntimeException("file reading failed.");
 		}
@@ -123,13 +186,223 @@ public class Parser {
 		return set;
 	}
 
-	private static int asInt(String str) {
-		return Integer.parseInt(str);
+	private static IntMap<Node> parseNodesInParallel(File nodes) {
+		ByteBuffer[] chunks = chunk(nodes, false);
+		final List<List<Node>> results = new ArrayList<List<Node>>(
+				Collections.<List<Node>> nCopies(chunks.length, null));
+
+		parseChunks(chunks, new ChunkParser() {
+			public void parse(TabScanner scanner, int chunk)
+					throws IOException {
+				List<Node> list = new ArrayList<Node>();
+				while (scanner.hasNextLine())
+					list.add(readNode(scanner));
+				results.set(chunk, list);
+			}
+		});
+
+		// merging is cheap next to the parsing, so it's done on this thread.
+		int size = 0;
+		for (List<Node> list : results)
+			size += list.size();
+		IntMap<Node> map = new IntMap<Node>(size);
+		for (List<Node> list : results)
+			for (Node node : list)
+				map.put(node.nodeID, node);
+		return map;
 	}
 
-	private static double asDouble(String str) {
-		return Double.parseDouble(str);
+	private static Collection<Segment> parseSegmentsInParallel(File segments,
+			final Graph graph) {
+		ByteBuffer[] chunks = chunk(segments, true);
+
+		// first count the points in each chunk, so that every chunk knows
+		// where its points start in the shared geometry.
+		final int[] firstPoints = new int[chunks.length + 1];
+		parseChunks(chunks, new ChunkParser() {
+			public void parse(TabScanner scanner, int chunk)
+					throws IOException {
+				int points = 0;
+				while (scanner.hasNextLine())
+					points += (scanner.countTokens() - 4) / 2;
+				firstPoints[chunk + 1] = points;
+			}
+		});
+		for (int i = 0; i < chunks.length; i++)
+			firstPoints[i + 1] += firstPoints[i];
+
+		// then parse them properly. each chunk fills in its own stretch of
+		// the geometry, and only reads the node and road maps, so they can all
+		// run at once. none of them link their segments in.
+		final Geometry geometry = new Geometry(firstPoints[chunks.length]);
+		final List<List<Segment>> results = new ArrayList<List<Segment>>(
+				Collections.<List<Segment>> nCopies(chunks.length, null));
+
+		parseChunks(chunks, new ChunkParser() {
+			public void parse(TabScanner scanner, int chunk)
+					throws IOException {
+				List<Segment> list = new ArrayList<Segment>();
+				int points = firstPoints[chunk];
+				while (scanner.hasNextLine()) {
+					Segment segment = readSegment(scanner, graph, geometry,
+							points);
+					list.add(segment);
+					points += segment.pointCount;
+				}
+				results.set(chunk, list);
+			}
+		});
+
+		// linking adds to the nodes' and roads' sets, so do that here, in file
+		// order, so the graph comes out the same every time.
+		List<Segment> list = new ArrayList<Segment>();
+		for (List<Segment> chunk : results) {
+			for (Segment segment : chunk) {
+				segment.link();
+				list.add(segment);
+			}
+		}
+		return list;
+	}
+
+	private static Node readNode(TabScanner scanner) throws IOException {
+		int nodeID = scanner.nextInt();
+		double lat = scanner.nextDouble();
+		double lon = scanner.nextDouble();
+		scanner.skipLine();
+
+		return new Node(nodeID, lat, lon);
+	}
+
+	/**
+	 * Reads one segment, putting its points into the geometry starting at the
+	 * given point.
+	 */
+	private static Segment readSegment(TabScanner scanner, Graph graph,
+			Geometry geometry, int firstPoint) throws IOException {
+		int roadID = scanner.nextInt();
+		double length = scanner.nextDouble();
+		int node1ID = scanner.nextInt();
+		int node2ID = scanner.nextInt();
+
+		int point = firstPoint;
+		while (scanner.hasNextToken()) {
+			double lat = scanner.nextDouble();
+			double lon = scanner.nextDouble();
+			geometry.setLatLon(point++, lat, lon);
+		}
+		scanner.skipLine();
+
+		return new Segment(graph, roadID, length, node1ID, node2ID, geometry,
+				firstPoint, point - firstPoint);
+	}
+
+	private static TabScanner open(File file, Mode mode) throws IOException {
+		if (mode == Mode.MAP || mode == Mode.PARALLEL)
+			return TabScanner.map(file);
+		return new TabScanner(file);
+	}
+
+	/**
+	 * Memory-maps the file and cuts it into chunks that each start at the
+	 * beginning of a line, returning a slice of the mapping for each.
+	 */
+	private static ByteBuffer[] chunk(File file, boolean header) {
+		ByteBuffer bytes;
+		try {
+			bytes = TabScanner.mapFile(file);
+		} catch (IOException e) {
+			throw new RuntimeException("file reading failed.");
+		}
+
+		int start = 0;
+		if (header) // throw away the top line of the file.
+			start = lineAfter(bytes, 0);
+
+		int size = bytes.limit() - start;
+		int count = Math.max(1, Math.min(ForkJoinPool.commonPool()
+				.getParallelism() * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+
+		// move each boundary forward to the start of the next line.
+		int[] bounds = new int[count + 1];
+		bounds[0] = start;
+		for (int i = 1; i < count; i++)
+			bounds[i] = Math.max(bounds[i - 1],
+					lineAfter(bytes, start + (int) ((long) size * i / count)));
+		bounds[count] = bytes.limit();
+
+		ByteBuffer[] chunks = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			ByteBuffer chunk = bytes.duplicate();
+			chunk.limit(bounds[i + 1]);
+			chunk.position(bounds[i]);
+			chunks[i] = chunk.slice();
+		}
+		return chunks;
+	}
+
+	/**
+	 * Runs the parser over every chunk on the common ForkJoinPool, and waits
+	 * for them all to finish.
+	 */
+	private static void parseChunks(ByteBuffer[] chunks, ChunkParser parser) {
+		ForkJoinPool.commonPool().invoke(
+				new ChunkTask(chunks, 0, chunks.length, parser));
+	}
+
+	/**
+	 * Returns the position just after the first newline at or after the given
+	 * position, or the end of the buffer if there isn't one.
+	 */
+	private static int lineAfter(ByteBuffer bytes, int position) {
+		if (position > 0 && bytes.get(position - 1) == '\n')
+			return position;
+		while (position < bytes.limit() && bytes.get(position++) != '\n')
+			;
+		return position;
+	}
+
+	/**
+	 * Parses one whole chunk, given its own scanner and its position in the
+	 * file.
+	 */
+	private interface ChunkParser {
+		void parse(TabScanner scanner, int chunk) throws IOException;
+	}
+
+	/**
+	 * Parses a range of chunks, splitting the range in half until there's
+	 * only one chunk left to do.
+	 */
+	@SuppressWarnings("serial")
+	private static class ChunkTask extends RecursiveAction {
+		private final ByteBuffer[] chunks;
+		private final int from, to;
+		private final ChunkParser parser;
+
+		ChunkTask(ByteBuffer[] chunks, int from, int to, ChunkParser parser) {
+			this.chunks = chunks;
+			this.from = from;
+			this.to = to;
+			this.parser = parser;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChunkTask(chunks, from, middle, parser),
+						new ChunkTask(chunks, middle, to, parser));
+				return;
+			}
+
+			try {
+				parser.parse(new TabScanner(chunks[from].duplicate()), from);
+			} catch (IOException e) {
+				throw new RuntimeException("file reading failed.");
+			}
+		}
 	}
 }
 
-// code for COMP261 assignments
\ No newline at end of file
+// code for COMP261 assignments
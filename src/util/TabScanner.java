@@ -0,0 +1,304 @@
+package util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A TabScanner reads the tab separated data files a byte at a time out of a
+ * single reusable buffer. Rather than splitting each line into Strings and
+ * then parsing those, ints and doubles are parsed in place as the bytes go
+ * past, so the only objects made while scanning are the Strings asked for
+ * with nextString.
+ *
+ * Tokens are separated by one or more tabs, and records by newlines. Spaces
+ * are not separators, as road names contain them.
+ *
+ * A scanner either streams a file through a small buffer, or (using map)
+ * reads a memory-mapped file in place, in which case the bytes never get
+ * copied onto the Java heap at all.
+ */
+public class TabScanner {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// the most significant digits we accumulate into a long before we start
+	// just counting the magnitude instead.
+	private static final int MAX_DIGITS = 18;
+
+	// every power of ten up to here is exactly representable as a double.
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final ReadableByteChannel channel;
+	private final ByteBuffer buffer;
+
+	// reused for the bytes of every string token.
+	private byte[] text = new byte[64];
+
+	public TabScanner(File file) throws IOException {
+		this(new FileInputStream(file).getChannel(), ByteBuffer
+				.allocate(BUFFER_SIZE));
+	}
+
+	/**
+	 * Scans the bytes read from the given channel, using the given buffer to
+	 * hold them. The buffer is refilled from the channel whenever it runs out.
+	 */
+	TabScanner(ReadableByteChannel channel, ByteBuffer buffer) {
+		this.channel = channel;
+		this.buffer = buffer;
+		buffer.limit(0);
+	}
+
+	/**
+	 * Scans the remaining bytes of the given buffer, which should hold the
+	 * whole of whatever is to be read.
+	 */
+	TabScanner(ByteBuffer bytes) {
+		this.channel = null;
+		this.buffer = bytes;
+	}
+
+	/**
+	 * Makes a scanner that reads the given file through a read-only memory
+	 * mapping. Repeated loads of the same file are then served straight out of
+	 * the OS page cache.
+	 */
+	public static TabScanner map(File file) throws IOException {
+		return new TabScanner(mapFile(file));
+	}
+
+	/**
+	 * Maps the whole of the given file into memory. The mapping stays valid
+	 * after the channel is closed.
+	 */
+	static ByteBuffer mapFile(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Skips over any blank lines, and returns true if there is another record
+	 * to read.
+	 */
+	public boolean hasNextLine() throws IOException {
+		int c = peek();
+		while (c == '\n' || c == '\r') {
+			buffer.get();
+			c = peek();
+		}
+		return c != -1;
+	}
+
+	/**
+	 * Skips any separating tabs, and returns true if there is another token on
+	 * the current line.
+	 */
+	public boolean hasNextToken() throws IOException {
+		int c = skipTabs();
+		return c != -1 && c != '\n' && c != '\r';
+	}
+
+	/**
+	 * Throws away the rest of the current line, including the newline.
+	 */
+	public void skipLine() throws IOException {
+		int c = peek();
+		while (c != -1 && c != '\n') {
+			buffer.get();
+			c = peek();
+		}
+		if (c == '\n')
+			buffer.get();
+	}
+
+	public int nextInt() throws IOException {
+		int c = skipTabs();
+		boolean negative = false;
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			buffer.get();
+			c = peek();
+		}
+
+		if (c < '0' || c > '9')
+			throw new NumberFormatException("expected an int, found "
+					+ describe(c));
+
+		int value = 0;
+		while (c >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+			buffer.get();
+			c = peek();
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a decimal number such as -36.847622 or 1.5E-4. The significant
+	 * digits are gathered into a long and then scaled by a power of ten once at
+	 * the end. This is exact for the coordinates in our files, and at most an
+	 * ulp out for the seventeen digit segment lengths.
+	 */
+	public double nextDouble() throws IOException {
+		int c = skipTabs();
+		boolean negative = false;
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			buffer.get();
+			c = peek();
+		}
+
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean seenDigit = false;
+
+		// the integer part.
+		while (c >= '0' && c <= '9') {
+			seenDigit = true;
+			if (digits < MAX_DIGITS) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa != 0)
+					digits++;
+			} else {
+				exponent++;
+			}
+			buffer.get();
+			c = peek();
+		}
+
+		// the fractional part.
+		if (c == '.') {
+			buffer.get();
+			c = peek();
+			while (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa != 0)
+						digits++;
+					exponent--;
+				}
+				buffer.get();
+				c = peek();
+			}
+		}
+
+		if (!seenDigit)
+			throw new NumberFormatException("expected a double, found "
+					+ describe(c));
+
+		// an optional exponent, as written by Double.toString.
+		if (c == 'e' || c == 'E') {
+			buffer.get();
+			exponent += nextInt();
+		}
+
+		double value = mantissa;
+		if (exponent < 0) {
+			value = -exponent < POWERS_OF_TEN.length ? value
+					/ POWERS_OF_TEN[-exponent] : value / Math.pow(10, -exponent);
+		} else if (exponent > 0) {
+			value = exponent < POWERS_OF_TEN.length ? value
+					* POWERS_OF_TEN[exponent] : value * Math.pow(10, exponent);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Counts the tokens left on the current line without parsing them, and
+	 * moves on to the next line.
+	 */
+	public int countTokens() throws IOException {
+		int count = 0;
+		while (hasNextToken()) {
+			count++;
+			int c = peek();
+			while (c != -1 && c != '\t' && c != '\n' && c != '\r') {
+				buffer.get();
+				c = peek();
+			}
+		}
+		skipLine();
+		return count;
+	}
+
+	/**
+	 * Returns the next token as a String. Only use this for fields we actually
+	 * keep as text.
+	 */
+	public String nextString() throws IOException {
+		int c = skipTabs();
+		int length = 0;
+		while (c != -1 && c != '\t' && c != '\n' && c != '\r') {
+			if (length == text.length) {
+				byte[] bigger = new byte[text.length * 2];
+				System.arraycopy(text, 0, bigger, 0, length);
+				text = bigger;
+			}
+			text[length++] = buffer.get();
+			c = peek();
+		}
+		return new String(text, 0, length, StandardCharsets.UTF_8);
+	}
+
+	public void close() throws IOException {
+		if (channel != null)
+			channel.close();
+	}
+
+	/**
+	 * Moves past any tabs, returning the first byte after them without
+	 * consuming it.
+	 */
+	private int skipTabs() throws IOException {
+		int c = peek();
+		while (c == '\t') {
+			buffer.get();
+			c = peek();
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the next byte without consuming it, or -1 at the end of the
+	 * file. The buffer is refilled here when it runs dry, which keeps records
+	 * that straddle two fills invisible to the parsing methods.
+	 */
+	private int peek() throws IOException {
+		if (!buffer.hasRemaining() && !fill())
+			return -1;
+		return buffer.get(buffer.position()) & 0xff;
+	}
+
+	private boolean fill() throws IOException {
+		if (channel == null)
+			return false;
+		buffer.clear();
+		int read;
+		do {
+			read = channel.read(buffer);
+		} while (read == 0);
+		buffer.flip();
+		return read > 0;
+	}
+
+	private static String describe(int c) {
+		return c == -1 ? "end of file" : "'" + (char) c + "'";
+	}
+}
+
+// code for COMP261 assignments